@@ -0,0 +1,120 @@
+/*
+ * Alphabet.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class Alphabet {
+
+	/* Partition of all characters into classes that no edge of an automaton can tell apart: two
+	 * characters are in the same class if every edge reads either both or neither of them.
+	 * DFA tables have one column per class instead of one per character, so a pattern like
+	 * [a-z0-9]* needs three columns (letters, digits and everything else), not 65536.
+	 *
+	 * The boundaries where some edge's range starts or ends cut the characters into intervals,
+	 * starts[i]..starts[i+1]-1. Intervals read by the same set of edges share a class. */
+	private final char[] starts;
+	private final int[] intervalClass;
+	private final char[] representatives; // The first character of every class
+	private final int[] latin1Class;
+
+	public Alphabet(char[] usedSymbols) {
+		this(usedSymbols, usedSymbols);
+	}
+
+	public Alphabet(char[] lows, char[] highs) {
+		// The ranges lows[i]..highs[i] are the ones read by the edges of an automaton
+
+		TreeSet<Integer> boundaries = new TreeSet<Integer>();
+		boundaries.add(0);
+		HashMap<Integer, Integer> rangeIds = new HashMap<Integer, Integer>(); // Every distinct range, numbered
+		for(int i=0; i<lows.length; i++) {
+			boundaries.add((int) lows[i]);
+			if(highs[i] < Character.MAX_VALUE) boundaries.add(highs[i] + 1);
+			int key = (lows[i] << 16) | highs[i];
+			if(!rangeIds.containsKey(key)) rangeIds.put(key, rangeIds.size());
+		}
+		starts = new char[boundaries.size()];
+		int count = 0;
+		for(int boundary: boundaries)
+			starts[count++] = (char) boundary;
+
+		/* Find which ranges contain each interval */
+		BitSet[] ranges = new BitSet[starts.length];
+		for(int i=0; i<starts.length; i++)
+			ranges[i] = new BitSet();
+		for(Map.Entry<Integer, Integer> range: rangeIds.entrySet()) {
+			char low = (char) (range.getKey() >>> 16), high = (char) (range.getKey() & 0xFFFF);
+			for(int i=Arrays.binarySearch(starts, low); i<starts.length && starts[i] <= high; i++)
+				ranges[i].set(range.getValue());
+		}
+
+		/* Intervals contained in the same ranges form a class */
+		HashMap<BitSet, Integer> classes = new HashMap<BitSet, Integer>();
+		intervalClass = new int[starts.length];
+		char[] firsts = new char[starts.length];
+		for(int i=0; i<starts.length; i++) {
+			Integer cls = classes.get(ranges[i]);
+			if(cls == null) {
+				cls = classes.size();
+				classes.put(ranges[i], cls);
+				firsts[cls] = starts[i];
+			}
+			intervalClass[i] = cls;
+		}
+		representatives = Arrays.copyOf(firsts, classes.size());
+
+		/* Lookup table so ASCII characters, and bytes when matching UTF-8, never need a binary search */
+		latin1Class = new int[256];
+		for(char c=0; c<256; c++)
+			latin1Class[c] = searchClass(c);
+	}
+
+	public int getClassCount() {
+		return representatives.length;
+	}
+
+	public int classOf(char c) {
+		return c < 256 ? latin1Class[c] : searchClass(c);
+	}
+
+	public int classOfByte(byte b) {
+		return latin1Class[b & 0xFF];
+	}
+
+	private int searchClass(char c) {
+		int i = Arrays.binarySearch(starts, c);
+		if(i < 0) i = -i - 2; // The interval starting before c
+		return intervalClass[i];
+	}
+
+	public char representative(int cls) { // A character of class 'cls'
+		return representatives[cls];
+	}
+
+	/* The intervals, for writing the alphabet out, see PatternArtifact */
+	int getIntervalCount() {
+		return starts.length;
+	}
+
+	char getIntervalStart(int interval) {
+		return starts[interval];
+	}
+
+	int getIntervalClass(int interval) {
+		return intervalClass[interval];
+	}
+
+}
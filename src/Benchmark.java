@@ -0,0 +1,451 @@
+/*
+ * Benchmark.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class Benchmark {
+
+	/* Measures the compile and match paths so regressions show up before a change is merged.
+	 * Every benchmark is run for a warmup period, then for several measured rounds, and the
+	 * throughput, the average latency and the bytes allocated per operation are printed.
+	 *
+	 *     java Benchmark [measure milliseconds] [name filter]
+	 *
+	 * Inputs are the test1-test4 corpora and synthetic inputs generated from a fixed seed, for
+	 * several pattern and input sizes, so results are comparable between runs and machines.
+	 *
+	 *     java Benchmark scaling
+	 *
+	 * instead runs testScaling, which checks that hostile inputs are matched in linear time. */
+
+	private static final int ROUNDS = 5;
+	private static final int[] PATTERN_SIZES = {8, 32, 128}; // Number of symbols in the synthetic patterns
+	private static final int[] INPUT_SIZES = {1 << 12, 1 << 16, 1 << 20}; // Bytes of synthetic input
+	private static final int LINE_LENGTH = 80;
+
+	/* Patterns that make backtracking matchers take exponential or quadratic time, with their
+	 * hostile inputs. Every input has the literals a match needs, so the prefilter lets it
+	 * through, and is only decided by its last characters, so the automaton reads all of it. */
+	private static final ScalingCase[] SCALING_CASES = {
+		new ScalingCase("(a*)*b", "a", "cb", false, true),
+		new ScalingCase("(a|aa)*c", "a", "bc", false, true),
+		new ScalingCase("(a|b)*a(a|b){20}c", null, "bbbbbbbbbbbbbbbbbbbbbc", false, false), // Too many states for a DFA
+	};
+	private static final int SCALING_MIN = 1 << 6; // Input lengths, doubling from the first to the last
+	private static final int SCALING_MAX = 1 << 20;
+	/* Largest ratio allowed between the time per character at any length and the lowest time
+	 * per character measured. It stays about 1 for a linear matcher, but a quadratic one's
+	 * doubles with every doubling of the length. */
+	private static final double MAX_SLOWDOWN = 4.0;
+	private static final long MIN_SCALING_NANOS = 1000000; // Shorter times are too noisy to compare
+	private static final long JAVA_TIMEOUT_MILLIS = 1000; // java.util.regex is given up on after this long
+
+	/* Patterns for the corpora, picked so that some but not all lines match */
+	private static final String[][] CORPUS_PATTERNS = {
+		{"test1", "the"},
+		{"test2", "(a|e)(n|r)(d|e)"},
+		{"test3", "7(0|1|2)*5"},
+		{"test3", "^7\\.[0-9]+$"}, // Anchored, most lines are rejected at their first character
+		{"test4", "(a|b)*abb"},
+	};
+
+	private static final PrintStream console = System.out;
+	private static volatile long sink; // Results are added here so the JIT cannot remove the work
+
+	private static long measureMillis = 1500;
+	private static String filter = "";
+
+	private interface Operation {
+		void run();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length > 0 && args[0].equals("scaling")) {
+			testScaling();
+			return;
+		}
+		if(args.length > 0) measureMillis = Long.parseLong(args[0]);
+		if(args.length > 1) filter = args[1];
+
+		console.println(String.format(Locale.ROOT, "%-58s %14s %12s %12s %10s", "Benchmark", "ops/s", "+-", "us/op", "B/op"));
+
+		for(String[] corpus: CORPUS_PATTERNS)
+			benchmarkCorpus(corpus[0], corpus[1]);
+
+		for(int size: PATTERN_SIZES) {
+			benchmarkCompile("words", wordsPattern(size));
+			benchmarkCompile("suffix", suffixPattern(size));
+		}
+
+		File directory = Files.createTempDirectory("regex-benchmark").toFile();
+		try {
+			for(int inputSize: INPUT_SIZES) {
+				List<String> lines = syntheticLines(inputSize);
+				String fileName = writeInput(directory, lines);
+				for(int size: PATTERN_SIZES) {
+					benchmarkMatching("words", wordsPattern(size), inputSize, lines, fileName);
+					benchmarkMatching("suffix", suffixPattern(size), inputSize, lines, fileName);
+				}
+			}
+		} finally {
+			for(File file: directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	private static void benchmarkCorpus(String corpus, final String regex) throws IOException {
+		final List<String> lines = Files.readAllLines(Paths.get(corpus + ".txt"), StandardCharsets.UTF_8);
+		final NFA nfa = compile(regex);
+		final String fileName = corpus;
+
+		run(corpus + " accepts " + regex, new Operation() {
+			public void run() {
+				for(String line: lines)
+					if(nfa.accepts(line)) sink++;
+			}
+		});
+		run(corpus + " acceptsLine " + regex, new Operation() {
+			public void run() {
+				for(String line: lines)
+					if(nfa.acceptsLine(line)) sink++;
+			}
+		});
+		run(corpus + " acceptedLines " + regex, new Operation() {
+			public void run() {
+				nfa.acceptedLines(fileName);
+			}
+		});
+		final Matcher matcher = nfa.matcher();
+		final int[] groups = new int[nfa.compileCaptures().getSlotCount()];
+		run(corpus + " findGroups " + regex, new Operation() {
+			public void run() {
+				for(String line: lines)
+					if(matcher.findGroups(line, 0, groups)) sink += groups[1];
+			}
+		});
+	}
+
+	private static void benchmarkCompile(String family, final String regex) {
+		final String postfix = new InfixToPostfixConverter(regex).getPosfixExpression();
+		String name = family + " pattern=" + countSymbols(regex);
+
+		run("convert " + name, new Operation() {
+			public void run() {
+				sink += new InfixToPostfixConverter(regex).getPosfixExpression().length();
+			}
+		});
+		run("getNFAfromPostfix " + name, new Operation() {
+			public void run() {
+				sink += NFA.getNFAfromPostfix(postfix).hashCode();
+			}
+		});
+		run("getNFAfromPostfix+compile " + name, new Operation() {
+			public void run() {
+				sink += NFA.getNFAfromPostfix(postfix).compile().getStateCount();
+			}
+		});
+	}
+
+	private static void benchmarkMatching(String family, String regex, int inputSize, final List<String> lines, final String fileName) {
+		final NFA nfa = compile(regex);
+		String name = family + " pattern=" + countSymbols(regex) + " input=" + inputSize;
+
+		run("acceptsLine " + name, new Operation() {
+			public void run() {
+				for(String line: lines)
+					if(nfa.acceptsLine(line)) sink++;
+			}
+		});
+		run("acceptedLines " + name, new Operation() {
+			public void run() {
+				nfa.acceptedLines(fileName);
+			}
+		});
+	}
+
+	private static NFA compile(String regex) {
+		return NFA.getNFAfromPostfix(new InfixToPostfixConverter(regex).getPosfixExpression());
+	}
+
+	private static void run(String name, Operation operation) {
+		if(!name.contains(filter)) return;
+
+		/* acceptedLines prints its results, which would dominate the time measured */
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {}
+			public void write(byte[] b, int off, int len) {}
+		}));
+		try {
+			long end = System.nanoTime() + measureMillis * 1000000L / 2; // Warmup, so the JIT and the DFA caches settle
+			while(System.nanoTime() < end)
+				operation.run();
+
+			double[] opsPerSecond = new double[ROUNDS];
+			long totalOps = 0, totalNanos = 0;
+			long allocatedBefore = allocatedBytes();
+			for(int r=0; r<ROUNDS; r++) {
+				long ops = 0;
+				long start = System.nanoTime();
+				end = start + measureMillis * 1000000L / ROUNDS;
+				long now;
+				do {
+					operation.run();
+					ops++;
+					now = System.nanoTime();
+				} while(now < end);
+				opsPerSecond[r] = ops * 1e9 / (now - start);
+				totalOps += ops;
+				totalNanos += now - start;
+			}
+			long allocated = allocatedBytes() - allocatedBefore;
+
+			double mean = 0, variance = 0;
+			for(double value: opsPerSecond)
+				mean += value / ROUNDS;
+			for(double value: opsPerSecond)
+				variance += (value - mean) * (value - mean) / (ROUNDS - 1);
+
+			console.println(String.format(Locale.ROOT, "%-58s %14.1f %12.1f %12.3f %10s", name, mean, Math.sqrt(variance),
+					totalNanos / 1e3 / totalOps, allocated < 0 ? "n/a" : String.valueOf(allocated / totalOps)));
+		} finally {
+			System.setOut(console);
+		}
+	}
+
+	public static void testScaling() throws IOException {
+		/* Matches the SCALING_CASES against hostile inputs of doubling length with accepts,
+		 * acceptsLine and acceptedLines, and throws a RuntimeException if a result is not the
+		 * expected one or the time taken grows faster than linearly. The same inputs are matched
+		 * with java.util.regex, which backtracks, until it takes longer than JAVA_TIMEOUT_MILLIS,
+		 * and both times are printed. Every result java.util.regex finishes with must be the
+		 * same, and a RuntimeException is thrown otherwise. */
+		console.println(String.format(Locale.ROOT, "%-36s %8s %14s %18s", "Pattern", "length", "ms", "java.util.regex ms"));
+		File directory = Files.createTempDirectory("regex-scaling").toFile();
+		try {
+			for(ScalingCase scaling: SCALING_CASES) {
+				NFA nfa = compile(scaling.pattern);
+				Pattern pattern = Pattern.compile(scaling.pattern);
+				for(String method: new String[] {"accepts", "acceptsLine", "acceptedLines"}) {
+					boolean expected = method.equals("accepts") ? scaling.accepted : scaling.lineAccepted;
+					String warmup = scaling.input(SCALING_MAX / 16);
+					String warmupFile = writeInput(directory, Arrays.asList(warmup));
+					for(int r=0; r<10; r++) // So the JIT has compiled the matching code before anything is measured
+						match(nfa, method, warmup, warmupFile);
+
+					double bestPerCharacter = Double.MAX_VALUE;
+					boolean javaGaveUp = false;
+					for(int length=SCALING_MIN; length<=SCALING_MAX; length*=2) {
+						String input = scaling.input(length);
+						String fileName = writeInput(directory, Arrays.asList(input));
+
+						boolean result = false;
+						long nanos = Long.MAX_VALUE;
+						for(int r=0; r<5; r++) { // Best of five
+							long start = System.nanoTime();
+							result = match(nfa, method, input, fileName);
+							nanos = Math.min(nanos, System.nanoTime() - start);
+						}
+						if(result != expected)
+							throw new RuntimeException(scaling.pattern + " " + method + " returned " + result + " for length " + length + ", expected " + expected);
+
+						String javaTime = "gave up";
+						Boolean javaResult = null; // Null if java.util.regex did not finish
+						if(!javaGaveUp) {
+							long start = System.nanoTime();
+							try {
+								java.util.regex.Matcher matcher = pattern.matcher(new Deadline(input, start + JAVA_TIMEOUT_MILLIS * 1000000L));
+								javaResult = method.equals("accepts") ? matcher.matches() : matcher.find();
+								javaTime = String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6);
+							} catch (Deadline.Expired e) {
+								javaGaveUp = true;
+								javaTime = "> " + JAVA_TIMEOUT_MILLIS;
+							} catch (StackOverflowError e) {
+								javaGaveUp = true;
+								javaTime = "stack overflow";
+							}
+						}
+						console.println(String.format(Locale.ROOT, "%-36s %8d %14.3f %18s", scaling.pattern + " " + method, length, nanos / 1e6, javaTime));
+						if(javaResult != null && javaResult != result)
+							throw new RuntimeException(scaling.pattern + " " + method + " returned " + result + " for length " + length + " but java.util.regex returned " + javaResult);
+
+						if(nanos < MIN_SCALING_NANOS) continue;
+						double perCharacter = (double) nanos / length;
+						bestPerCharacter = Math.min(bestPerCharacter, perCharacter);
+						if(perCharacter > MAX_SLOWDOWN * bestPerCharacter)
+							throw new RuntimeException(scaling.pattern + " " + method + " took " + perCharacter + " ns per character for length " + length
+									+ " but " + bestPerCharacter + " ns for a shorter input, which is not linear");
+					}
+				}
+			}
+		} finally {
+			for(File file: directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+		console.println("All tests passed!");
+	}
+
+	private static class ScalingCase {
+
+		final String pattern;
+		final String unit; // The text the input repeats, null for random a's and b's
+		final String end; // The text the input ends with
+		final boolean accepted; // What accepts returns for the input
+		final boolean lineAccepted; // What acceptsLine and acceptedLines return for it
+
+		ScalingCase(String pattern, String unit, String end, boolean accepted, boolean lineAccepted) {
+			this.pattern = pattern;
+			this.unit = unit;
+			this.end = end;
+			this.accepted = accepted;
+			this.lineAccepted = lineAccepted;
+		}
+
+		String input(int length) { // The hostile input of 'length' characters
+			StringBuilder sb = new StringBuilder(length);
+			Random random = new Random(length);
+			while(sb.length() < length - end.length())
+				sb.append(unit != null ? unit : random.nextBoolean() ? "a" : "b");
+			sb.setLength(length - end.length());
+			return sb.append(end).toString();
+		}
+	}
+
+	private static boolean match(NFA nfa, String method, String input, String fileName) {
+		if(method.equals("accepts")) return nfa.accepts(input);
+		if(method.equals("acceptsLine")) return nfa.acceptsLine(input);
+
+		/* acceptedLines prints the accepted lines, so its output tells whether the line matched */
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(output));
+		try {
+			nfa.acceptedLines(fileName);
+		} finally {
+			System.setOut(console);
+		}
+		return output.toString().startsWith("ACCEPTED LINE");
+	}
+
+	private static class Deadline implements CharSequence {
+
+		/* Text that makes java.util.regex give up once the time is up, since a match cannot be
+		 * interrupted: reading a character after the deadline throws Expired. The clock is only
+		 * read once every 1024 characters. */
+
+		static class Expired extends RuntimeException {
+			private static final long serialVersionUID = 1L;
+		}
+
+		private final CharSequence text;
+		private final long deadline;
+		private int reads;
+
+		Deadline(CharSequence text, long deadline) {
+			this.text = text;
+			this.deadline = deadline;
+		}
+
+		public char charAt(int index) {
+			if((++reads & 1023) == 0 && System.nanoTime() > deadline) throw new Expired();
+			return text.charAt(index);
+		}
+
+		public int length() {
+			return text.length();
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return new Deadline(text.subSequence(start, end), deadline);
+		}
+
+		public String toString() {
+			return text.toString();
+		}
+	}
+
+	private static long allocatedBytes() {
+		// Bytes allocated by this thread so far, or a negative number if the JVM cannot tell
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) return Long.MIN_VALUE;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static String wordsPattern(int symbols) {
+		// A union of random four letter words, like a list of keywords to look for
+		Random random = new Random(symbols);
+		StringBuilder sb = new StringBuilder("(");
+		for(int i=0; i<symbols/4; i++) {
+			if(i > 0) sb.append('|');
+			for(int k=0; k<4; k++)
+				sb.append((char) ('a' + random.nextInt(26)));
+		}
+		return sb.append(')').toString();
+	}
+
+	private static String suffixPattern(int symbols) {
+		/* (a|b)*a(a|b)(a|b)...: the n-th symbol from the end is an a, whose DFA has 2^n states */
+		StringBuilder sb = new StringBuilder("(a|b)*a");
+		for(int i=3; i+2<=symbols; i+=2)
+			sb.append("(a|b)");
+		return sb.toString();
+	}
+
+	private static int countSymbols(String regex) {
+		int count = 0;
+		for(int i=0; i<regex.length(); i++)
+			if(Character.isLetterOrDigit(regex.charAt(i))) count++;
+		return count;
+	}
+
+	private static List<String> syntheticLines(int bytes) {
+		/* Lines of random lower case words, with enough a's and b's for the suffix patterns */
+		Random random = new Random(bytes);
+		ArrayList<String> lines = new ArrayList<String>();
+		int total = 0;
+		while(total < bytes) {
+			StringBuilder sb = new StringBuilder();
+			while(sb.length() < LINE_LENGTH) {
+				if(sb.length() > 0) sb.append(' ');
+				int length = 2 + random.nextInt(8);
+				for(int k=0; k<length; k++)
+					sb.append(random.nextBoolean() ? (char) ('a' + random.nextInt(2)) : (char) ('a' + random.nextInt(26)));
+			}
+			lines.add(sb.toString());
+			total += sb.length() + 1;
+		}
+		return lines;
+	}
+
+	private static String writeInput(File directory, List<String> lines) throws IOException {
+		// Writes the lines to a file and returns its name without the '.txt' extension, as acceptedLines expects
+		File file = new File(directory, "input" + lines.size() + ".txt");
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+		String path = file.getPath();
+		return path.substring(0, path.length() - ".txt".length());
+	}
+
+}
@@ -0,0 +1,236 @@
+/*
+ * BitParallelNFA.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.ArrayList;
+
+public class BitParallelNFA {
+
+	/* Glushkov automaton of a pattern with at most 63 symbols, simulated with the set of active
+	 * states in a single long. Every symbol (a character or a class) of the pattern is a position
+	 * and a state of its own, bit 0 is the initial state and bit p is position p. The automaton
+	 * has no epsilon edges and every edge into position p reads the symbol of p, so a step is
+	 *
+	 *     next = follow(current) & mask(c)
+	 *
+	 * where follow is the union of the positions that can come after each active one and mask(c)
+	 * is the set of positions whose symbol matches c. The union is looked up a byte of the state set at a
+	 * time in precomputed tables, so a step costs at most eight lookups whatever the pattern.
+	 * Nothing changes while matching, so one instance can be shared by every thread. */
+
+	public static final int MAX_POSITIONS = 63; // One bit per position, and one for the initial state
+
+	private final int positionCount;
+	private final Alphabet alphabet;
+	private final long[] classMasks; // Positions whose symbol matches the characters of each class of the alphabet
+	private final long[][] followTables; // followTables[k][b] is the union of follow(p) for the bits p of b in byte k of the state set
+	private final long acceptMask; // Last positions, and the initial state if the pattern matches the empty string
+
+	private BitParallelNFA(CharClass[] symbols, long[] follow, long acceptMask) {
+		int positions = symbols.length;
+		positionCount = positions - 1;
+
+		/* The alphabet is split by the ranges of every position's class */
+		ArrayList<Character> lows = new ArrayList<Character>(), highs = new ArrayList<Character>();
+		for(int p=1; p<positions; p++) {
+			for(int r=0; r<symbols[p].getRangeCount(); r++) {
+				lows.add(symbols[p].getLow(r));
+				highs.add(symbols[p].getHigh(r));
+			}
+		}
+		alphabet = new Alphabet(toArray(lows), toArray(highs));
+		classMasks = new long[alphabet.getClassCount()];
+		for(int cls=0; cls<classMasks.length; cls++)
+			for(int p=1; p<positions; p++)
+				if(symbols[p].contains(alphabet.representative(cls))) classMasks[cls] |= 1L << p;
+
+		/* Each table entry adds the follow set of the lowest bit to an entry computed before */
+		followTables = new long[(positions + 7) / 8][256];
+		for(int k=0; k<followTables.length; k++) {
+			for(int b=1; b<256; b++) {
+				int p = 8 * k + Integer.numberOfTrailingZeros(b);
+				followTables[k][b] = followTables[k][b & (b - 1)] | (p < positions ? follow[p] : 0);
+			}
+		}
+
+		this.acceptMask = acceptMask;
+	}
+
+	private static char[] toArray(ArrayList<Character> list) {
+		char[] array = new char[list.size()];
+		for(int i=0; i<array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	public static BitParallelNFA fromPostfix(String postfixExpression) {
+		// Returns the bit-parallel automaton for a postfix expression, or null if it has too many symbols
+		return fromTree(RegexNode.fromPostfix(postfixExpression));
+	}
+
+	public static BitParallelNFA fromTree(RegexNode root) {
+		if(hasAnchors(root)) return null; // The automaton has no way to tell where the input starts or ends
+		int positions = countSymbols(root);
+		if(positions > MAX_POSITIONS) return null;
+
+		Builder builder = new Builder(positions + 1);
+		Builder.Sets sets = builder.analyse(root);
+		builder.follow[0] = sets.first; // The initial state is followed by the first positions
+		return new BitParallelNFA(builder.symbols, builder.follow, sets.last | (sets.nullable ? 1L : 0));
+	}
+
+	private static int countSymbols(RegexNode node) {
+		if(node.getKind() == RegexNode.Kind.SYMBOL) return 1;
+		if(node.getKind() == RegexNode.Kind.REPEAT) // Every copy of the child has positions of its own
+			return Math.min(MAX_POSITIONS + 1, copies(node) * countSymbols(node.getChildren().get(0)));
+		int count = 0;
+		for(RegexNode child: node.getChildren()) {
+			count += countSymbols(child);
+			if(count > MAX_POSITIONS) break; // Too many already, no need to count the rest
+		}
+		return count;
+	}
+
+	private static boolean hasAnchors(RegexNode node) {
+		if(node.getKind() == RegexNode.Kind.START || node.getKind() == RegexNode.Kind.END) return true;
+		for(RegexNode child: node.getChildren())
+			if(hasAnchors(child)) return true;
+		return false;
+	}
+
+	private static int copies(RegexNode repeat) {
+		// x{m,n} is built as m copies of x followed by n-m copies of x?, x{m,} as m copies followed by x*
+		return (repeat.getMax() < 0) ? repeat.getMin() + 1 : repeat.getMax();
+	}
+
+	private long follow(long states) {
+		// Union of the positions that can follow any of 'states'
+		long next = 0;
+		for(int k=0; states != 0; k++, states >>>= 8)
+			next |= followTables[k][(int) states & 0xFF];
+		return next;
+	}
+
+	public boolean accepts(CharSequence s) {
+		// Checks whether the automaton accepts the whole of 's'
+		long states = 1; // Only the initial state
+		for(int i=0; i<s.length(); i++) {
+			states = follow(states) & classMasks[alphabet.classOf(s.charAt(i))];
+			if(states == 0) return false; // No state left that could accept
+		}
+		return (states & acceptMask) != 0;
+	}
+
+	public boolean acceptsLine(CharSequence line) {
+		/* Checks whether the automaton accepts any part of 'line'. Keeping the initial state
+		 * active at every position starts a new match there. */
+		return acceptsLine(line, 0);
+	}
+
+	public boolean acceptsLine(CharSequence line, int from) {
+		// Starts reading at 'from', see FirstCharacters. The initial position is set again after every character
+		long states = 1;
+		for(int i=from; ; i++) {
+			if((states & acceptMask) != 0) return true;
+			if(i == line.length()) return false;
+			states = (follow(states) & classMasks[alphabet.classOf(line.charAt(i))]) | 1;
+		}
+	}
+
+	public int getPositionCount() { // Number of symbols in the pattern
+		return positionCount;
+	}
+
+	private static class Builder { // Numbers the symbols of a tree and computes their follow sets
+
+		final CharClass[] symbols; // Symbol of each position, position 0 is the initial state
+		final long[] follow;
+		int next = 1; // Next position to number
+
+		Builder(int positions) {
+			symbols = new CharClass[positions];
+			follow = new long[positions];
+		}
+
+		static class Sets { // What a subexpression contributes to the automaton
+			boolean nullable; // Matches the empty string
+			long first; // Positions a match can start with
+			long last; // Positions a match can end with
+		}
+
+		Sets analyse(RegexNode node) {
+			Sets sets = new Sets();
+			switch(node.getKind()) {
+			case EMPTY:
+				sets.nullable = true;
+				break;
+			case SYMBOL:
+				int p = next++;
+				symbols[p] = node.getCharClass();
+				sets.first = sets.last = 1L << p;
+				break;
+			case STAR: // Every last position may be followed by a first position again
+				sets = analyse(node.getChildren().get(0));
+				addFollow(sets.last, sets.first);
+				sets.nullable = true;
+				break;
+			case GROUP: // Matches the same strings as its child
+				sets = analyse(node.getChildren().get(0));
+				break;
+			case CONCAT:
+				sets = analyse(node.getChildren().get(0));
+				for(int i=1; i<node.getChildren().size(); i++) {
+					Sets right = analyse(node.getChildren().get(i));
+					addFollow(sets.last, right.first);
+					Sets both = new Sets();
+					both.nullable = sets.nullable && right.nullable;
+					both.first = sets.nullable ? sets.first | right.first : sets.first;
+					both.last = right.nullable ? sets.last | right.last : right.last;
+					sets = both;
+				}
+				break;
+			case REPEAT:
+				sets = new Sets();
+				sets.nullable = true; // Zero copies so far
+				for(int i=0; i<copies(node); i++) {
+					Sets copy = analyse(node.getChildren().get(0));
+					if(i >= node.getMin()) {
+						if(node.getMax() < 0) addFollow(copy.last, copy.first); // The last copy is x*
+						copy.nullable = true; // Copies after the min-th are optional
+					}
+					addFollow(sets.last, copy.first);
+					Sets both = new Sets();
+					both.nullable = sets.nullable && copy.nullable;
+					both.first = sets.nullable ? sets.first | copy.first : sets.first;
+					both.last = copy.nullable ? sets.last | copy.last : copy.last;
+					sets = both;
+				}
+				break;
+			case UNION:
+				sets = analyse(node.getChildren().get(0));
+				for(int i=1; i<node.getChildren().size(); i++) {
+					Sets right = analyse(node.getChildren().get(i));
+					sets.nullable |= right.nullable;
+					sets.first |= right.first;
+					sets.last |= right.last;
+				}
+				break;
+			}
+			return sets;
+		}
+
+		private void addFollow(long from, long to) {
+			for(long bits = from; bits != 0; bits &= bits - 1)
+				follow[Long.numberOfTrailingZeros(bits)] |= to;
+		}
+	}
+
+}
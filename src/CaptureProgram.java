@@ -0,0 +1,224 @@
+/*
+ * CaptureProgram.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+public class CaptureProgram {
+
+	/* The automaton of a pattern with its capturing groups, run as a Pike VM by
+	 * Matcher.findGroups. It is built by NFABuilder from the same tree as the NFA, but before
+	 * RegexOptimizer, which drops the groups and may reorder the branches of a union. The edges
+	 * of every state are kept in order of preference, so of all the matches that start at the
+	 * leftmost position the one found is the one a backtracking matcher like java.util.regex
+	 * would find first.
+	 *
+	 * The groups follow the same rules, with two differences from java.util.regex. A thread
+	 * never goes round a repetition again without reading a character, since it would reach a
+	 * state it has already been in. So when the body of a repetition can match the empty
+	 * string, java.util.regex can end with one more iteration that matches nothing and this
+	 * cannot: (a?)*b on "aab" gives group 1 = "a" here but "" there, and (a*)* on "b" gives no
+	 * group 1 here but "" there. The leftmost match itself can differ too, (c*|b)* on "b" is
+	 * "b" here and "" there. Also, the slots of a thread only hold what that thread saved, so a
+	 * group that takes no part in the match is always -1. java.util.regex can keep a group set
+	 * by an attempt that failed: ((a))*c on "abc" gives no group 2 here but "a" there.
+	 *
+	 * Besides edges on characters there are epsilon edges, which may assert an anchor or save
+	 * the position in a slot. Slots 2k and 2k+1 hold where group k starts and ends, -1 if it
+	 * did not take part in the match, and group 0 is the whole match. A CaptureProgram never
+	 * changes once it is built and can be shared by any number of threads. Everything that
+	 * changes while matching lives in a Matcher. */
+
+	private final int stateCount;
+	private final int startState;
+	private final int matchState; // The only accepting state, it has no edges
+	private final int slotCount;
+
+	/* Edges of state s are edge[i] for edgeStart[s] <= i < edgeStart[s+1], in order of
+	 * preference. An epsilon edge stores the anchor it asserts in edgeLows, '\0' for none, and
+	 * if it has none the slot it saves plus one in edgeHighs, '\0' for none, like in NFABuilder. */
+	private final int[] edgeStart;
+	private final int[] edgeTargets;
+	private final char[] edgeLows;
+	private final char[] edgeHighs;
+	private final boolean[] edgeEpsilon;
+
+	CaptureProgram(int stateCount, int startState, int matchState, int slotCount, int[] edgeStart, int[] edgeTargets, char[] edgeLows, char[] edgeHighs, boolean[] edgeEpsilon) {
+		this.stateCount = stateCount;
+		this.startState = startState;
+		this.matchState = matchState;
+		this.slotCount = slotCount;
+		this.edgeStart = edgeStart;
+		this.edgeTargets = edgeTargets;
+		this.edgeLows = edgeLows;
+		this.edgeHighs = edgeHighs;
+		this.edgeEpsilon = edgeEpsilon;
+	}
+
+	public static CaptureProgram fromPostfix(String postfixExpression) {
+		RegexNode tree = RegexNode.fromPostfix(postfixExpression);
+		NFABuilder builder = new NFABuilder();
+		builder.add(tree);
+		return builder.buildCaptures(countGroups(tree));
+	}
+
+	private static int countGroups(RegexNode node) { // The largest group number in the tree
+		int count = (node.getKind() == RegexNode.Kind.GROUP) ? node.getGroup() : 0;
+		for(RegexNode child: node.getChildren())
+			count = Math.max(count, countGroups(child));
+		return count;
+	}
+
+	void addThread(StateSet list, int[] listSlots, int state, int[] slots, int position, boolean atEnd, int[] stack) {
+		/* Adds the thread in 'state' with 'slots' to the end of 'list', followed by every thread
+		 * it reaches along epsilon edges at 'position', in order of preference. The slots of a
+		 * state are kept in listSlots[state * slotCount...]. A state already on the list has a
+		 * thread that is preferred, so it is not added again. This is a depth-first search with
+		 * 'stack' instead of recursion, which also holds the saved slots to restore when the
+		 * search backs out of a save edge. 'slots' is the same afterwards. */
+		int top = 0;
+		stack[top++] = state;
+		stack[top++] = -1;
+		stack[top++] = 0;
+		while(top > 0) {
+			int value = stack[--top], slot = stack[--top], curr = stack[--top];
+			if(curr < 0) { // Backing out of a save edge
+				slots[slot] = value;
+				continue;
+			}
+			if(list.contains(curr)) continue;
+			if(slot >= 0) { // Entering a save edge
+				stack[top++] = -1;
+				stack[top++] = slot;
+				stack[top++] = slots[slot];
+				slots[slot] = position;
+			}
+			list.add(curr);
+			if(curr == matchState || (edgeStart[curr] != edgeStart[curr+1] && !edgeEpsilon[edgeStart[curr]]))
+				System.arraycopy(slots, 0, listSlots, curr * slotCount, slotCount);
+
+			/* Push the edges last first, so the first is searched first */
+			for(int e=edgeStart[curr+1]-1; e>=edgeStart[curr]; e--) {
+				if(!edgeEpsilon[e]) continue;
+				if(edgeLows[e] != '\0' && !(edgeLows[e] == '^' ? position == 0 : atEnd)) continue; // The anchor does not hold
+				stack[top++] = edgeTargets[e];
+				stack[top++] = (edgeLows[e] == '\0') ? edgeHighs[e] - 1 : -1; // The slot it saves, or -1
+				stack[top++] = 0;
+			}
+		}
+	}
+
+	boolean step(StateSet from, int[] fromSlots, CharSequence s, int position, StateSet to, int[] toSlots, int[] slots, int[] stack) {
+		/* Moves the threads in 'from' over the character at 'position' to 'to', in order of
+		 * preference. Returns true if a thread has reached the match state, whose slots are then
+		 * those of the match. The threads after it are dropped, since it is preferred to any
+		 * match of theirs, and at the end of 's' only the match state is looked for. */
+		boolean atEnd = position + 1 == s.length();
+		for(int k=0; k<from.size(); k++) {
+			int state = from.get(k);
+			if(state == matchState) return true;
+			if(position == s.length()) continue;
+			char c = s.charAt(position);
+			for(int e=edgeStart[state]; e<edgeStart[state+1]; e++) {
+				if(edgeEpsilon[e] || c < edgeLows[e] || c > edgeHighs[e] || to.contains(edgeTargets[e])) continue;
+				System.arraycopy(fromSlots, state * slotCount, slots, 0, slotCount);
+				addThread(to, toSlots, edgeTargets[e], slots, position + 1, atEnd, stack);
+			}
+		}
+		return false;
+	}
+
+	int getStackSize() { // Room that addThread needs on its stack
+		return 3 * (2 * edgeTargets.length + 1);
+	}
+
+	int getStartState() {
+		return startState;
+	}
+
+	int getMatchState() {
+		return matchState;
+	}
+
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	public int getGroupCount() { // Not counting group 0, the whole match
+		return slotCount / 2 - 1;
+	}
+
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	public static void test() { // Method to test the CaptureProgram class
+		System.out.println("Testing...");
+
+		/* Groups must be found where java.util.regex finds them, for patterns without the
+		 * differences described above */
+		String[] patterns = {"(a|ab)(c|bcd)(d*)", "((a|b)*)c", "(ab|a)(bc|c)?", "((a)|(b))+", "(a{2,3})(a*)", "^(a|b)(c)?", "(a)(b)$",
+				"([a-c]+)-([0-9]+)", "a(b(c|d)?)*e", "(x)?(y)?z", "(a*)(a*)"};
+		Random random = new Random(1);
+		for(String pattern: patterns) {
+			NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression());
+			java.util.regex.Pattern expected = java.util.regex.Pattern.compile(pattern);
+			for(int i=0; i<2000; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(10);
+				for(int k=0; k<length; k++)
+					sb.append("abcdexyz-1".charAt(random.nextInt(10)));
+				String s = sb.toString();
+				java.util.regex.Matcher matcher = expected.matcher(s);
+				String[] groups = nfa.findGroups(s);
+				if(matcher.find() != (groups != null)) throw new RuntimeException(pattern + " matches " + s + " differently");
+				for(int k=0; groups != null && k<groups.length; k++)
+					if(!Objects.equals(matcher.group(k), groups[k])) throw new RuntimeException(pattern + " finds group " + k + " of " + s + " as " + groups[k]);
+			}
+		}
+		System.out.println("Groups are found like java.util.regex finds them");
+
+		/* Where they differ: no iteration matches the empty string, and a group that takes no
+		 * part is unset. Each example is a pattern, a string and its expected groups. */
+		String[][] differences = {{"(a?)*b", "aab", "aab", "a"}, {"(x?)*", "xx", "xx", "x"}, {"(a{0,}a?c?){1,}$", "dac", "ac", "ac"},
+				{"(a*)*", "b", "", null}, {"(c*|b)*", "b", "b", "b"}, {"((a))*c", "abc", "c", null, null}};
+		for(String[] example: differences) {
+			NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(example[0]).getPosfixExpression());
+			String[] groups = nfa.findGroups(example[1]);
+			if(!Arrays.equals(groups, Arrays.copyOfRange(example, 2, example.length))) throw new RuntimeException(example[0] + " finds the groups of " + example[1] + " as " + Arrays.toString(groups));
+		}
+		System.out.println("Empty iterations and groups that take no part are handled like in a Pike VM");
+
+		/* A pattern that makes java.util.regex backtrack for ever is matched in linear time, and
+		 * a warm Matcher does not allocate */
+		NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter("((a*)*)b").getPosfixExpression());
+		Matcher matcher = nfa.matcher();
+		int[] slots = new int[nfa.compileCaptures().getSlotCount()];
+		long[] nanos = new long[2];
+		for(int round=0; round<2; round++) {
+			StringBuilder sb = new StringBuilder();
+			for(int i=0; i<50000*(round+1); i++)
+				sb.append('a');
+			String s = sb.append('b').toString();
+			matcher.findGroups(s, 0, slots); // Warmup
+			long start = System.nanoTime();
+			if(!matcher.findGroups(s, 0, slots) || slots[3] != s.length() - 1) throw new RuntimeException("((a*)*)b found the wrong groups");
+			nanos[round] = System.nanoTime() - start;
+			System.out.println(s.length() + " characters matched in " + nanos[round] / 1e6 + " ms");
+		}
+		if(nanos[1] > 4 * nanos[0]) throw new RuntimeException("Matching is not linear");
+
+		System.out.println("All tests passed!");
+	}
+
+}
@@ -0,0 +1,195 @@
+/*
+ * CharClass.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class CharClass {
+
+	/* A set of characters, stored as sorted ranges that neither overlap nor touch. It is read
+	 * from a bracket expression like [a-z0-9_] or [^"], or stands for the wildcard '.'. Both
+	 * the infix and the postfix form of a pattern write classes the same way:
+	 *
+	 *     [abc]    any of a, b or c
+	 *     [a-z]    any character from a to z
+	 *     [^...]   any character not in the class
+	 *     \x       the character x itself, so [\]\-\\] is one of ']', '-' or '\'
+	 *     \d \w \s  a digit, a word character [a-zA-Z_0-9] or a whitespace character, and
+	 *     \D \W \S  any character that is not one, like java.util.regex
+	 *
+	 * The wildcard matches any character except the line terminators, like java.util.regex. */
+
+	private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+
+	private static final String SHORTHANDS = "dwsDWS";
+	private static final String[] SHORTHAND_RANGES = {"09", "azAZ__09", "  \t\r"}; // Pairs of low and high characters
+
+	private final char[] lows;
+	private final char[] highs;
+
+	private CharClass(char[] lows, char[] highs) {
+		this.lows = lows;
+		this.highs = highs;
+	}
+
+	public static CharClass of(char c) {
+		return new CharClass(new char[] {c}, new char[] {c});
+	}
+
+	public static CharClass any() { // The class of the wildcard '.'
+		ArrayList<char[]> ranges = new ArrayList<char[]>();
+		for(int i=0; i<LINE_TERMINATORS.length(); i++) {
+			char c = LINE_TERMINATORS.charAt(i);
+			ranges.add(new char[] {c, c});
+		}
+		return fromRanges(ranges).negate();
+	}
+
+	public static boolean isShorthand(char c) { // Whether \c stands for a class like \d
+		return SHORTHANDS.indexOf(c) >= 0;
+	}
+
+	private static CharClass shorthand(char c) {
+		String pairs = SHORTHAND_RANGES[SHORTHANDS.indexOf(c) % 3];
+		ArrayList<char[]> ranges = new ArrayList<char[]>();
+		for(int i=0; i<pairs.length(); i+=2)
+			ranges.add(new char[] {pairs.charAt(i), pairs.charAt(i+1)});
+		CharClass result = fromRanges(ranges);
+		return Character.isUpperCase(c) ? result.negate() : result;
+	}
+
+	public static int findEnd(String expression, int start) {
+		/* Returns the index just after the ']' closing the bracket expression that starts with
+		 * the '[' at 'start', or -1 if it is not closed */
+		for(int i=start+1; i<expression.length(); i++) {
+			char c = expression.charAt(i);
+			if(c == '\\') i++; // The escaped character cannot close the class
+			else if(c == ']') return i + 1;
+		}
+		return -1;
+	}
+
+	public static CharClass parse(String bracketExpression) {
+		/* Reads a bracket expression such as "[^a-z]", as found by findEnd. Throws a
+		 * RuntimeException like InfixToPostfixConverter if it is malformed. */
+		int end = bracketExpression.length() - 1; // Index of the closing ']'
+		int i = 1;
+		boolean negated = false;
+		if(i < end && bracketExpression.charAt(i) == '^') {
+			negated = true;
+			i++;
+		}
+		if(i == end) throw new RuntimeException("empty character class!");
+
+		ArrayList<char[]> ranges = new ArrayList<char[]>();
+		while(i < end) {
+			char low = bracketExpression.charAt(i++);
+			if(low == '\\') {
+				low = bracketExpression.charAt(i++);
+				if(isShorthand(low)) { // Add all of its ranges
+					CharClass shorthand = shorthand(low);
+					for(int k=0; k<shorthand.lows.length; k++)
+						ranges.add(new char[] {shorthand.lows[k], shorthand.highs[k]});
+					continue;
+				}
+			}
+			char high = low;
+			if(i + 1 < end && bracketExpression.charAt(i) == '-') { // A range, unless the '-' is the last character
+				i++;
+				high = bracketExpression.charAt(i++);
+				if(high == '\\') high = bracketExpression.charAt(i++);
+				if(high < low) throw new RuntimeException("invalid range in character class!");
+			}
+			ranges.add(new char[] {low, high});
+		}
+
+		CharClass result = fromRanges(ranges);
+		return negated ? result.negate() : result;
+	}
+
+	static CharClass fromRanges(ArrayList<char[]> ranges) {
+		// Sorts the ranges and merges the ones that overlap or touch
+		ranges.sort((a, b) -> a[0] - b[0]);
+		char[] lows = new char[ranges.size()];
+		char[] highs = new char[ranges.size()];
+		int count = 0;
+		for(char[] range: ranges) {
+			if(count > 0 && range[0] <= highs[count-1] + 1) {
+				if(range[1] > highs[count-1]) highs[count-1] = range[1];
+			} else {
+				lows[count] = range[0];
+				highs[count] = range[1];
+				count++;
+			}
+		}
+		return new CharClass(Arrays.copyOf(lows, count), Arrays.copyOf(highs, count));
+	}
+
+	public CharClass negate() {
+		ArrayList<char[]> ranges = new ArrayList<char[]>();
+		int next = 0; // First character not yet covered
+		for(int i=0; i<lows.length; i++) {
+			if(lows[i] > next) ranges.add(new char[] {(char) next, (char) (lows[i] - 1)});
+			next = highs[i] + 1;
+		}
+		if(next <= Character.MAX_VALUE) ranges.add(new char[] {(char) next, Character.MAX_VALUE});
+		return new CharClass(toArray(ranges, 0), toArray(ranges, 1));
+	}
+
+	private static char[] toArray(ArrayList<char[]> ranges, int index) {
+		char[] result = new char[ranges.size()];
+		for(int i=0; i<result.length; i++)
+			result[i] = ranges.get(i)[index];
+		return result;
+	}
+
+	public int getRangeCount() {
+		return lows.length;
+	}
+
+	public char getLow(int range) {
+		return lows[range];
+	}
+
+	public char getHigh(int range) {
+		return highs[range];
+	}
+
+	public boolean contains(char c) {
+		int i = Arrays.binarySearch(lows, c);
+		if(i >= 0) return true;
+		i = -i - 2; // The range starting before c
+		return i >= 0 && c <= highs[i];
+	}
+
+	public boolean equals(Object other) {
+		return other instanceof CharClass && Arrays.equals(lows, ((CharClass) other).lows) && Arrays.equals(highs, ((CharClass) other).highs);
+	}
+
+	public int hashCode() {
+		return 31 * Arrays.hashCode(lows) + Arrays.hashCode(highs);
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for(int i=0; i<lows.length; i++) {
+			sb.append(escape(lows[i]));
+			if(highs[i] != lows[i]) sb.append('-').append(escape(highs[i]));
+		}
+		return sb.append(']').toString();
+	}
+
+	private static String escape(char c) {
+		return ("\\]-^[").indexOf(c) >= 0 ? "\\" + c : "" + c;
+	}
+
+}
@@ -0,0 +1,551 @@
+/*
+ * CompiledNFA.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class CompiledNFA {
+
+	/* A CompiledNFA never changes once it is built and can be shared by any number of threads.
+	 * Everything that changes while matching lives in a Matcher. */
+
+	/* Closures are only precomputed while their total size stays below this many entries.
+	 * Patterns like (a|b|c|...)* give every state a closure as large as the whole automaton,
+	 * and for those it is cheaper to follow the epsilon edges while matching. */
+	private static final int CLOSURE_BUDGET = 1 << 22;
+
+	private final int stateCount; // States are numbered 0..stateCount-1, 0 is the initial state
+	private final boolean[] accepting;
+	private final int[] acceptTags; // Which pattern each accepting state belongs to, see PatternSet
+
+	/* Symbol edges of state s read the characters symbolLows[i]..symbolHighs[i] and lead to
+	 * symbolTargets[i], for symbolStart[s] <= i < symbolStart[s+1] */
+	private final int[] symbolStart;
+	private final char[] symbolLows;
+	private final char[] symbolHighs;
+	private final int[] symbolTargets;
+
+	/* Epsilon edges of state s are epsilonTargets[i] for epsilonStart[s] <= i < epsilonStart[s+1] */
+	private final int[] epsilonStart;
+	private final int[] epsilonTargets;
+
+	/* Assertions of state s, epsilon edges only followed at the start of the input ('^') or at
+	 * its end ('$'), lead to assertionTargets[i] for assertionStart[s] <= i < assertionStart[s+1] */
+	private final int[] assertionStart;
+	private final int[] assertionTargets;
+	private final char[] assertionAnchors;
+	private final BitSet emptyTags; // Patterns that match the empty input, where both anchors hold
+	private final boolean anchoredAtStart; // No match can start after position 0, every one needs a '^'
+	private final FirstCharacters firstCharacters; // What a match can start with, null if it can start without reading one
+
+	private final Alphabet alphabet; // Maps characters to the columns of DFA tables
+
+	/* Epsilon closure of state s is closures[i] for closureStart[s] <= i < closureStart[s+1].
+	 * Only states with symbol edges or accepting states are stored, since the others never
+	 * influence a match. Both arrays are null if the closures did not fit in CLOSURE_BUDGET. */
+	private final int[] closureStart;
+	private final int[] closures;
+
+	CompiledNFA(int initialState, Set<Integer> acceptStates, Set<Edge> transitions) {
+		this(initialState, tagAll(acceptStates), transitions);
+	}
+
+	CompiledNFA(int initialState, Map<Integer, Integer> acceptTags, Set<Edge> transitions) {
+		/* Same as above, but every accept state is mapped to the index of the pattern it accepts
+		 * for, so a PatternSet can tell which of its patterns matched */
+
+		/* Group the edges by their source state */
+		HashMap<Integer, ArrayList<Edge>> outgoing = new HashMap<Integer, ArrayList<Edge>>();
+		for(Edge edge: transitions) {
+			ArrayList<Edge> edges = outgoing.get(edge.getSourceState());
+			if(edges == null) {
+				edges = new ArrayList<Edge>();
+				outgoing.put(edge.getSourceState(), edges);
+			}
+			edges.add(edge);
+		}
+
+		/* Renumber the states reachable from the initial state to 0..n-1 in breadth-first order */
+		HashMap<Integer, Integer> number = new HashMap<Integer, Integer>();
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		number.put(initialState, 0);
+		order.add(initialState);
+		for(int i=0; i<order.size(); i++) {
+			ArrayList<Edge> edges = outgoing.get(order.get(i));
+			if(edges == null) continue;
+			for(Edge edge: edges) {
+				if(!number.containsKey(edge.getDestinationState())) {
+					number.put(edge.getDestinationState(), order.size());
+					order.add(edge.getDestinationState());
+				}
+			}
+		}
+		stateCount = order.size();
+
+		/* Lay out the edges of every state next to each other */
+		int symbolCount = 0, epsilonCount = 0, assertionCount = 0;
+		for(Edge edge: transitions) {
+			if(!number.containsKey(edge.getSourceState())) continue; // Unreachable
+			if(edge.getAnchor() != 0) assertionCount++;
+			else if(edge.isEpsilonTransition()) epsilonCount++;
+			else symbolCount++;
+		}
+		accepting = new boolean[stateCount];
+		this.acceptTags = new int[stateCount];
+		symbolStart = new int[stateCount + 1];
+		symbolLows = new char[symbolCount];
+		symbolHighs = new char[symbolCount];
+		symbolTargets = new int[symbolCount];
+		epsilonStart = new int[stateCount + 1];
+		epsilonTargets = new int[epsilonCount];
+		assertionStart = new int[stateCount + 1];
+		assertionTargets = new int[assertionCount];
+		assertionAnchors = new char[assertionCount];
+		symbolCount = 0;
+		epsilonCount = 0;
+		assertionCount = 0;
+		for(int s=0; s<stateCount; s++) {
+			int original = order.get(s);
+			Integer tag = acceptTags.get(original);
+			accepting[s] = (tag != null);
+			this.acceptTags[s] = (tag != null) ? tag : -1;
+			symbolStart[s] = symbolCount;
+			epsilonStart[s] = epsilonCount;
+			assertionStart[s] = assertionCount;
+			ArrayList<Edge> edges = outgoing.get(original);
+			if(edges == null) continue;
+			for(Edge edge: edges) {
+				int target = number.get(edge.getDestinationState());
+				if(edge.getAnchor() != 0) {
+					assertionAnchors[assertionCount] = edge.getAnchor();
+					assertionTargets[assertionCount++] = target;
+				} else if(edge.isEpsilonTransition()) {
+					epsilonTargets[epsilonCount++] = target;
+				} else {
+					symbolLows[symbolCount] = edge.getSymbol();
+					symbolHighs[symbolCount] = edge.getHighSymbol();
+					symbolTargets[symbolCount++] = target;
+				}
+			}
+		}
+		symbolStart[stateCount] = symbolCount;
+		epsilonStart[stateCount] = epsilonCount;
+		assertionStart[stateCount] = assertionCount;
+
+		alphabet = new Alphabet(symbolLows, symbolHighs);
+
+		int[][] closureTable = precomputeClosures();
+		closureStart = (closureTable == null) ? null : closureTable[0];
+		closures = (closureTable == null) ? null : closureTable[1];
+
+		StateSet empty = new StateSet(stateCount);
+		search(empty, 0, true, true);
+		emptyTags = new BitSet();
+		addAcceptTags(empty, emptyTags);
+
+		StateSet later = new StateSet(stateCount);
+		addClosure(later, 0);
+		anchoredAtStart = isDead(later);
+		firstCharacters = FirstCharacters.of(startCharacters(later));
+	}
+
+	private CharClass startCharacters(StateSet start) {
+		/* The symbols on the edges out of 'start', the closure of the initial state. Null if a
+		 * match can start without reading one, because the empty string matches or because of
+		 * an anchor, which only holds at some positions of a line. */
+		if(hasAnchors() || anyAccepting(start)) return null;
+		ArrayList<char[]> ranges = new ArrayList<char[]>();
+		for(int i=0; i<start.size(); i++) {
+			int state = start.get(i);
+			for(int e=symbolStart[state]; e<symbolStart[state+1]; e++)
+				ranges.add(new char[] {symbolLows[e], symbolHighs[e]});
+		}
+		return CharClass.fromRanges(ranges);
+	}
+
+	private static Map<Integer, Integer> tagAll(Set<Integer> acceptStates) { // Tags every accept state with pattern 0
+		HashMap<Integer, Integer> acceptTags = new HashMap<Integer, Integer>();
+		for(int state: acceptStates)
+			acceptTags.put(state, 0);
+		return acceptTags;
+	}
+
+	public CompiledNFA toUTF8() {
+		/* Returns an equivalent automaton that reads UTF-8 encoded bytes instead of characters.
+		 * Its symbols are the byte values 0..255, and every edge on characters outside ASCII
+		 * becomes chains of edges through new states, one edge for each byte of the encoding.
+		 *
+		 * Characters are UTF-16 code units, so a supplementary character is read as two of them,
+		 * its high surrogate and then its low one, and the four bytes of its encoding are read
+		 * the same way: see addHighSurrogates. Like on characters, a match can also start at the
+		 * low surrogate. Lone surrogates are dropped since they never appear in valid UTF-8. */
+		HashMap<Integer, Integer> acceptStates = new HashMap<Integer, Integer>(); // Keeping their tags
+		HashSet<Edge> transitions = new HashSet<Edge>();
+		int nextState = stateCount;
+		for(int s=0; s<stateCount; s++) {
+			if(accepting[s]) acceptStates.put(s, acceptTags[s]);
+			for(int i=epsilonStart[s]; i<epsilonStart[s+1]; i++)
+				transitions.add(Edge.epsilonTransition(s, epsilonTargets[i]));
+			for(int i=assertionStart[s]; i<assertionStart[s+1]; i++)
+				transitions.add(Edge.assertion(s, assertionTargets[i], assertionAnchors[i]));
+			for(int i=symbolStart[s]; i<symbolStart[s+1]; i++)
+				nextState = addUTF8Range(symbolLows[i], symbolHighs[i], s, symbolTargets[i], nextState, transitions);
+		}
+
+		/* A match can start between the two surrogates of a character, which is the same as
+		 * the initial state reading any high surrogate and going back to itself */
+		HashMap<Integer, Integer> middleStates = new HashMap<Integer, Integer>();
+		for(int s=0; s<stateCount; s++)
+			for(int i=symbolStart[s]; i<symbolStart[s+1]; i++)
+				nextState = addSurrogatePairs(symbolLows[i], symbolHighs[i], s, symbolTargets[i], middleStates, nextState, transitions);
+		if(!anchoredAtStart)
+			nextState = addSurrogatePairs(Character.MIN_HIGH_SURROGATE, Character.MAX_HIGH_SURROGATE, 0, 0, middleStates, nextState, transitions);
+		return new CompiledNFA(0, acceptStates, transitions);
+	}
+
+	private int addSurrogatePairs(int low, int high, int from, int to, Map<Integer, Integer> middleStates, int nextState, HashSet<Edge> transitions) {
+		/* Adds edges from 'from' that read the encoding of the supplementary characters whose
+		 * high surrogate is from 'low' to 'high', and whose low surrogate is read from 'to' on.
+		 * The middle states of every target are only added once, and are kept in 'middleStates',
+		 * -1 if they would be dead. Returns the next unused state. */
+		low = Math.max(low, Character.MIN_HIGH_SURROGATE);
+		high = Math.min(high, Character.MAX_HIGH_SURROGATE);
+		if(low > high) return nextState;
+		Integer middle = middleStates.get(to);
+		if(middle == null) {
+			StateSet closure = new StateSet(stateCount);
+			search(closure, to);
+			middle = addLowSurrogates(closure, to, nextState, transitions) ? nextState : -1;
+			if(middle >= 0) nextState += 16;
+			middleStates.put(to, middle);
+		}
+		if(middle < 0) return nextState; // Nothing can follow the high surrogate
+		int shift = 0x40 - Character.MIN_HIGH_SURROGATE; // From a high surrogate to the code point >> 10
+		return addHighSurrogates(low + shift, high + shift, from, middle, nextState, transitions);
+	}
+
+	private static int addHighSurrogates(int first, int last, int from, int middle, int nextState, HashSet<Edge> transitions) {
+		/* Adds edges from 'from' that read the first three bytes of the UTF-8 encoding of the
+		 * supplementary characters whose code points shifted right by 10 bits, the bits held by
+		 * the high surrogate, are from 'first' to 'last'. Returns the next unused state. The
+		 * third byte also holds four bits of the low surrogate, m, and leads to middle+m. */
+		for(int m: new int[] {0x3, 0xFF}) { // The bits held by the third byte, then by the last two
+			if((first & ~m) == (last & ~m)) continue;
+			if((first & m) != 0) {
+				nextState = addHighSurrogates(first, first | m, from, middle, nextState, transitions);
+				return addHighSurrogates((first | m) + 1, last, from, middle, nextState, transitions);
+			}
+			if((last & m) != m) {
+				nextState = addHighSurrogates(first, (last & ~m) - 1, from, middle, nextState, transitions);
+				return addHighSurrogates(last & ~m, last, from, middle, nextState, transitions);
+			}
+		}
+
+		int second = nextState++, third = nextState++;
+		transitions.add(new Edge(from, second, (char) (0xF0 | first >> 8), (char) (0xF0 | last >> 8)));
+		transitions.add(new Edge(second, third, (char) (0x80 | (first >> 2) & 0x3F), (char) (0x80 | (last >> 2) & 0x3F)));
+		for(int k=first & 0x3; k<=(last & 0x3); k++)
+			for(int m=0; m<16; m++)
+				transitions.add(new Edge(third, middle + m, (char) (0x80 | k << 4 | m)));
+		return nextState;
+	}
+
+	private boolean addLowSurrogates(StateSet closure, int target, int middle, HashSet<Edge> transitions) {
+		/* Adds the middle states middle..middle+15 that follow the high surrogate on an edge to
+		 * 'target', whose epsilon closure is 'closure', and returns false instead if they would
+		 * be dead. Middle state middle+m reads the last byte of the characters whose low
+		 * surrogate has the bits m, and has an epsilon edge to 'target' so it accepts where
+		 * 'target' does. The edges of 'target' only read first bytes, never the last byte of a
+		 * character, so they never apply. */
+		boolean live = false;
+		for(int k=0; k<closure.size(); k++) {
+			int state = closure.get(k);
+			live |= accepting[state];
+			for(int i=symbolStart[state]; i<symbolStart[state+1]; i++) {
+				int low = Math.max(symbolLows[i], Character.MIN_LOW_SURROGATE);
+				int high = Math.min(symbolHighs[i], Character.MAX_LOW_SURROGATE);
+				for(int c=low; c<=high; c=(c | 0x3F) + 1) { // One edge for every 64 low surrogates
+					int end = Math.min(high, c | 0x3F);
+					transitions.add(new Edge(middle + ((c >> 6) & 0xF), symbolTargets[i], (char) (0x80 | c & 0x3F), (char) (0x80 | end & 0x3F)));
+					live = true;
+				}
+			}
+		}
+		if(!live) return false;
+		for(int m=0; m<16; m++)
+			transitions.add(Edge.epsilonTransition(middle + m, target));
+		return true;
+	}
+
+	private static int addUTF8Range(int low, int high, int from, int to, int nextState, HashSet<Edge> transitions) {
+		/* Adds edges from 'from' to 'to' that read the UTF-8 encoding of any character from
+		 * 'low' to 'high', and returns the next unused state. The range is split until every
+		 * part is a sequence of byte ranges, like [E1-E3][80-BF][80-BF], where any combination
+		 * of bytes from the ranges encodes a character of the part. */
+		if(low > high) return nextState;
+
+		/* Parts must not contain surrogates, and their characters must have the same length */
+		if(low >= Character.MIN_SURROGATE && low <= Character.MAX_SURROGATE)
+			return addUTF8Range(Character.MAX_SURROGATE + 1, high, from, to, nextState, transitions);
+		int[] limits = {0x7F, 0x7FF, Character.MIN_SURROGATE - 1};
+		for(int limit: limits) {
+			if(low <= limit && high > limit) {
+				nextState = addUTF8Range(low, limit, from, to, nextState, transitions);
+				return addUTF8Range(limit + 1, high, from, to, nextState, transitions);
+			}
+		}
+
+		/* Split where a continuation byte would not cover all of 80-BF */
+		byte[] lowBytes = String.valueOf((char) low).getBytes(StandardCharsets.UTF_8);
+		for(int i=1; i<lowBytes.length; i++) {
+			int m = (1 << (6 * i)) - 1; // The bits held by the last i bytes
+			if((low & ~m) == (high & ~m)) continue;
+			if((low & m) != 0) {
+				nextState = addUTF8Range(low, low | m, from, to, nextState, transitions);
+				return addUTF8Range((low | m) + 1, high, from, to, nextState, transitions);
+			}
+			if((high & m) != m) {
+				nextState = addUTF8Range(low, (high & ~m) - 1, from, to, nextState, transitions);
+				return addUTF8Range(high & ~m, high, from, to, nextState, transitions);
+			}
+		}
+
+		byte[] highBytes = String.valueOf((char) high).getBytes(StandardCharsets.UTF_8);
+		int state = from;
+		for(int b=0; b<lowBytes.length; b++) {
+			int next = (b == lowBytes.length - 1) ? to : nextState++;
+			transitions.add(new Edge(state, next, (char) (lowBytes[b] & 0xFF), (char) (highBytes[b] & 0xFF)));
+			state = next;
+		}
+		return nextState;
+	}
+
+	private int[][] precomputeClosures() {
+		/* Closures are only ever needed for the initial state and for the targets of symbol edges */
+		boolean[] needed = new boolean[stateCount];
+		needed[0] = true;
+		for(int target: symbolTargets)
+			needed[target] = true;
+
+		StateSet visited = new StateSet(stateCount);
+		int[] start = new int[stateCount + 1];
+		int[] flat = new int[Math.max(16, stateCount)];
+		int total = 0;
+		for(int s=0; s<stateCount; s++) {
+			start[s] = total;
+			if(!needed[s]) continue;
+			visited.clear();
+			search(visited, s);
+			for(int i=0; i<visited.size(); i++) {
+				int state = visited.get(i);
+				if(!isImportant(state)) continue;
+				if(total == flat.length) {
+					if(total >= CLOSURE_BUDGET) return null; // Too large, follow epsilon edges while matching instead
+					flat = Arrays.copyOf(flat, Math.min(2 * total, CLOSURE_BUDGET));
+				}
+				flat[total++] = state;
+			}
+		}
+		start[stateCount] = total;
+		for(boolean computed: needed)
+			if(computed) EngineMetrics.closuresPrecomputed.increment();
+		return new int[][] { start, Arrays.copyOf(flat, total) };
+	}
+
+	private void search(StateSet set, int state) {
+		/* Breadth-first search along epsilon edges that adds every state reachable from 'state'
+		 * to 'set'. The members of the set double as the queue, so no other memory is needed.
+		 * States already in the set are assumed to have been searched before. */
+		if(!set.add(state)) return;
+		for(int k=set.size()-1; k<set.size(); k++) {
+			int curr = set.get(k);
+			for(int i=epsilonStart[curr]; i<epsilonStart[curr+1]; i++)
+				set.add(epsilonTargets[i]);
+		}
+	}
+
+	private void search(StateSet set, int state, boolean atStart, boolean atEnd) {
+		// Same as search, but also follows the assertions that hold at the start or the end of the input
+		if(!set.add(state)) return;
+		followAssertions(set, set.size() - 1, atStart, atEnd);
+	}
+
+	private void followAssertions(StateSet set, int from, boolean atStart, boolean atEnd) {
+		// Follows epsilon edges and the assertions that hold from the members of 'set' from position 'from' on
+		for(int k=from; k<set.size(); k++) {
+			int curr = set.get(k);
+			for(int i=epsilonStart[curr]; i<epsilonStart[curr+1]; i++)
+				set.add(epsilonTargets[i]);
+			for(int i=assertionStart[curr]; i<assertionStart[curr+1]; i++)
+				if(assertionAnchors[i] == '^' ? atStart : atEnd) set.add(assertionTargets[i]);
+		}
+	}
+
+	private boolean isImportant(int state) {
+		/* States that can consume input or accept it, or reach an accepting state at the end of
+		 * the input through a '$'. A '^' only holds at the start of the input, where the closure
+		 * of the initial state is searched in full (addStartClosure), so anywhere else a state
+		 * with nothing but '^' edges can do nothing: the initial state of a '^' pattern must not
+		 * keep the search going after every thread has failed. */
+		if(accepting[state] || symbolStart[state] != symbolStart[state+1]) return true;
+		for(int i=assertionStart[state]; i<assertionStart[state+1]; i++)
+			if(assertionAnchors[i] == '$') return true;
+		return false;
+	}
+
+	int addClosure(StateSet set, int state) {
+		/* Adds the epsilon closure of 'state' to 'set'. With precomputed closures only the important
+		 * states are added, otherwise the whole closure is (the others are harmless while matching).
+		 * The new members are always appended to the end of the set. Safe to call from several
+		 * threads at once, as long as each uses its own sets. Returns the number of closures that
+		 * had to be searched for, 0 or 1, which the caller adds to EngineMetrics.closureSearches
+		 * in batches: this is called for every character. */
+		if(closures != null) {
+			for(int i=closureStart[state]; i<closureStart[state+1]; i++)
+				set.add(closures[i]);
+			return 0;
+		}
+		search(set, state);
+		return 1;
+	}
+
+	boolean hasAnchors() { // Whether the automaton has any '^' or '$'
+		return assertionTargets.length > 0;
+	}
+
+	int addStartClosure(StateSet set) {
+		/* Adds the closure of the initial state at the start of the input, where '^' holds. Without
+		 * anchors this is the same as addClosure(set, 0). Returns the closures searched for. */
+		if(!hasAnchors()) return addClosure(set, 0);
+		search(set, 0, true, false);
+		return 1;
+	}
+
+	void addEndClosure(StateSet set, boolean atStart) {
+		/* Adds the states reached from 'set' at the end of the input, where '$' holds, and '^' too
+		 * if the input is empty ('atStart') */
+		if(hasAnchors()) followAssertions(set, 0, atStart, true);
+	}
+
+	void endStep(StateSet from, int[] fromStarts, StateSet to, int[] toStarts, boolean atStart) {
+		/* Same as addEndClosure, for threads that remember the position they started at like in
+		 * step: 'to' gets the states of 'from' and the states reached from them at the end of the
+		 * input, still in order of their starting position */
+		for(int k=0; k<from.size(); k++) {
+			int state = from.get(k);
+			int before = to.size();
+			search(to, state, atStart, true);
+			for(int n=before; n<to.size(); n++)
+				toStarts[to.get(n)] = fromStarts[state];
+		}
+	}
+
+	boolean isDead(StateSet set) {
+		/* Whether no match can go on from the states in 'set', which happens once every thread of
+		 * an anchored match has failed */
+		for(int i=0; i<set.size(); i++)
+			if(isImportant(set.get(i))) return false;
+		return true;
+	}
+
+	boolean isAnchoredAtStart() {
+		return anchoredAtStart;
+	}
+
+	BitSet getEmptyTags() { // Patterns that match the empty input, must not be modified
+		return emptyTags;
+	}
+
+	boolean acceptsEmpty() {
+		return !emptyTags.isEmpty();
+	}
+
+	FirstCharacters getFirstCharacters() { // Null if every position of a line must be searched
+		return firstCharacters;
+	}
+
+	int step(StateSet from, char c, StateSet to) {
+		// Adds every state reachable from 'from' by reading 'c' to 'to', returns the closures searched for
+		int searches = 0;
+		for(int i=0; i<from.size(); i++) {
+			int state = from.get(i);
+			for(int e=symbolStart[state]; e<symbolStart[state+1]; e++) {
+				if(c < symbolLows[e] || c > symbolHighs[e] || to.contains(symbolTargets[e])) continue;
+				searches += addClosure(to, symbolTargets[e]);
+			}
+		}
+		return searches;
+	}
+
+	int step(StateSet from, int[] fromStarts, char c, StateSet to, int[] toStarts, int lastStart) {
+		/* Same as step, for threads that remember the position they started at in 'fromStarts'
+		 * and 'toStarts'. The states in 'from' must be in order of their starting position, and
+		 * 'to' will be too. A state reached by two threads keeps the one that started first,
+		 * and threads that started after 'lastStart' are dropped. */
+		int searches = 0;
+		for(int i=0; i<from.size(); i++) {
+			int state = from.get(i);
+			int start = fromStarts[state];
+			if(start > lastStart) break;
+			for(int e=symbolStart[state]; e<symbolStart[state+1]; e++) {
+				if(c < symbolLows[e] || c > symbolHighs[e] || to.contains(symbolTargets[e])) continue;
+				int before = to.size();
+				searches += addClosure(to, symbolTargets[e]);
+				for(int n=before; n<to.size(); n++)
+					toStarts[to.get(n)] = start;
+			}
+		}
+		return searches;
+	}
+
+	boolean anyAccepting(StateSet set) {
+		for(int i=0; i<set.size(); i++)
+			if(accepting[set.get(i)]) return true;
+		return false;
+	}
+
+	void addAcceptTags(StateSet set, BitSet tags) {
+		// Adds the patterns that the accepting states in 'set' belong to
+		for(int i=0; i<set.size(); i++) {
+			int state = set.get(i);
+			if(accepting[state]) tags.set(acceptTags[state]);
+		}
+	}
+
+	public Alphabet getAlphabet() {
+		return alphabet;
+	}
+
+	int stepClass(StateSet from, int cls, StateSet to) {
+		// Same as step, for a character of class 'cls'
+		return step(from, alphabet.representative(cls), to);
+	}
+
+	boolean isAccepting(int state) {
+		return accepting[state];
+	}
+
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	public int getEdgeCount() {
+		return symbolLows.length + epsilonTargets.length + assertionTargets.length;
+	}
+
+}
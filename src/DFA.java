@@ -0,0 +1,379 @@
+/*
+ * DFA.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+public class DFA {
+
+	public static final int DEFAULT_STATE_LIMIT = 10000; // Subset construction gives up beyond this many states
+
+	private final Alphabet alphabet;
+	private final int columns; // One column per character class
+	private final int stateCount;
+	private final int startState;
+	private final int[] table; // The transition of state s on a character of class c is table[s * columns + c]
+	private final long[] acceptBits; // Bit s is set if state s is accepting
+	private final long[] endAcceptBits; // Bit s is set if state s accepts when the input ends in it, which a '$' may need
+	private final int deadState; // The state no match can go on from, -1 if there is none
+	private final boolean acceptsEmpty;
+
+	/* Acceptance of a state during subset construction */
+	private static final int REJECTING = 0;
+	private static final int ACCEPTING_AT_END = 1; // Only accepts if the input ends in it
+	private static final int ACCEPTING = 2;
+
+	private DFA(Alphabet alphabet, int stateCount, int startState, int[] table, long[] acceptBits, long[] endAcceptBits, boolean acceptsEmpty) {
+		this.alphabet = alphabet;
+		this.columns = alphabet.getClassCount();
+		this.stateCount = stateCount;
+		this.startState = startState;
+		this.table = table;
+		this.acceptBits = acceptBits;
+		this.endAcceptBits = endAcceptBits;
+		this.acceptsEmpty = acceptsEmpty;
+
+		/* A minimal DFA has at most one dead state: one that rejects and never leaves itself */
+		int dead = -1;
+		for(int s=0; s<stateCount && dead < 0; s++) {
+			if(isAcceptingAtEnd(s)) continue;
+			dead = s;
+			for(int c=0; c<columns; c++)
+				if(table[s * columns + c] != s) dead = -1;
+		}
+		deadState = dead;
+	}
+
+	public static DFA build(CompiledNFA nfa, boolean unanchored, int stateLimit) {
+		/* Builds the minimal DFA for 'nfa' by subset construction followed by Hopcroft's
+		 * algorithm. An unanchored DFA accepts a line as soon as any part of it has matched.
+		 * Returns null if subset construction needs more than 'stateLimit' states. */
+
+		Alphabet alphabet = nfa.getAlphabet();
+		int columns = alphabet.getClassCount();
+
+		ArrayList<int[]> sets = new ArrayList<int[]>();
+		HashMap<StateKey, Integer> index = new HashMap<StateKey, Integer>();
+		int[] table = new int[16 * columns];
+		int[] acceptance = new int[16];
+
+		StateSet currentStates = new StateSet(nfa.getStateCount());
+		StateSet nextStates = new StateSet(nfa.getStateCount());
+		long searches = nfa.addStartClosure(currentStates);
+		addState(currentStates, sets, index);
+
+		/* Subset construction, 'sets' doubles as the work list */
+		for(int s=0; s<sets.size(); s++) {
+			if(sets.size() > stateLimit) {
+				EngineMetrics.closureSearches.add(searches);
+				return null;
+			}
+			if((s + 1) * columns > table.length) table = Arrays.copyOf(table, 2 * table.length);
+			if(s == acceptance.length) acceptance = Arrays.copyOf(acceptance, 2 * s);
+
+			currentStates.clear();
+			for(int state: sets.get(s))
+				currentStates.add(state);
+			acceptance[s] = nfa.anyAccepting(currentStates) ? ACCEPTING : REJECTING;
+			if(acceptance[s] == REJECTING && nfa.hasAnchors()) { // Follow the '$' assertions that hold at the end of the input
+				nextStates.clear();
+				for(int state: sets.get(s))
+					nextStates.add(state);
+				nfa.addEndClosure(nextStates, false);
+				if(nfa.anyAccepting(nextStates)) acceptance[s] = ACCEPTING_AT_END;
+			}
+
+			for(int c=0; c<columns; c++) {
+				if(unanchored && acceptance[s] == ACCEPTING) { // Once part of the line has matched, the line is accepted
+					table[s * columns + c] = s;
+					continue;
+				}
+				nextStates.clear();
+				searches += nfa.stepClass(currentStates, c, nextStates);
+				if(unanchored) searches += nfa.addClosure(nextStates, 0);
+				table[s * columns + c] = addState(nextStates, sets, index);
+			}
+		}
+		EngineMetrics.closureSearches.add(searches);
+
+		return minimize(alphabet, sets.size(), table, acceptance, nfa.acceptsEmpty());
+	}
+
+	private static int addState(StateSet states, ArrayList<int[]> sets, HashMap<StateKey, Integer> index) {
+		StateKey key = new StateKey(states);
+		Integer existing = index.get(key);
+		if(existing != null) return existing;
+		index.put(key, sets.size());
+		sets.add(key.getStates());
+		return sets.size() - 1;
+	}
+
+	private static DFA minimize(Alphabet alphabet, int n, int[] table, int[] acceptance, boolean acceptsEmpty) {
+		/* Hopcroft's algorithm. The partition is kept in 'elements', block b being
+		 * elements[first[b]..last[b]-1], and every state knows its block and position. */
+
+		int columns = alphabet.getClassCount();
+
+		/* Predecessors of state t on class c are sources[predStart[t*columns+c]..predStart[t*columns+c+1]-1] */
+		int[] predStart = new int[n * columns + 1];
+		for(int s=0; s<n; s++)
+			for(int c=0; c<columns; c++)
+				predStart[table[s * columns + c] * columns + c + 1]++;
+		for(int i=0; i<n*columns; i++)
+			predStart[i+1] += predStart[i];
+		int[] sources = new int[n * columns];
+		int[] fill = Arrays.copyOf(predStart, n * columns);
+		for(int s=0; s<n; s++)
+			for(int c=0; c<columns; c++)
+				sources[fill[table[s * columns + c] * columns + c]++] = s;
+
+		int[] elements = new int[n];
+		int[] position = new int[n];
+		int[] blockOf = new int[n];
+		int[] first = new int[n + 1];
+		int[] last = new int[n + 1];
+		int[] marked = new int[n + 1]; // Number of marked states at the front of each block
+		int blocks = 0;
+
+		/* Initial partition: accepting states, states that only accept at the end of the input and
+		 * the other states */
+		int k = 0;
+		for(int pass=ACCEPTING; pass>=REJECTING; pass--) {
+			int begin = k;
+			for(int s=0; s<n; s++) {
+				if(acceptance[s] == pass) {
+					elements[k] = s;
+					position[s] = k;
+					blockOf[s] = blocks;
+					k++;
+				}
+			}
+			if(k > begin) {
+				first[blocks] = begin;
+				last[blocks] = k;
+				blocks++;
+			}
+		}
+
+		int[] workList = new int[n + 1];
+		boolean[] inWorkList = new boolean[n + 1];
+		int pending = 0;
+		for(int b=0; b<blocks; b++) {
+			workList[pending++] = b;
+			inWorkList[b] = true;
+		}
+
+		int[] splitter = new int[n];
+		int[] touched = new int[n];
+		while(pending > 0) {
+			int b = workList[--pending];
+			inWorkList[b] = false;
+			int splitterSize = last[b] - first[b];
+			System.arraycopy(elements, first[b], splitter, 0, splitterSize); // 'b' itself may be split below
+
+			for(int c=0; c<columns; c++) {
+				/* Mark every state with a transition on 'c' into the splitter */
+				int touchedCount = 0;
+				for(int i=0; i<splitterSize; i++) {
+					int t = splitter[i] * columns + c;
+					for(int p=predStart[t]; p<predStart[t+1]; p++) {
+						int s = sources[p];
+						int block = blockOf[s];
+						int pos = position[s];
+						int front = first[block] + marked[block];
+						if(pos < front) continue; // Already marked
+						if(marked[block] == 0) touched[touchedCount++] = block;
+						/* Swap 's' to the front of its block */
+						int other = elements[front];
+						elements[front] = s;
+						position[s] = front;
+						elements[pos] = other;
+						position[other] = pos;
+						marked[block]++;
+					}
+				}
+
+				/* Split every touched block into its marked and unmarked states */
+				for(int i=0; i<touchedCount; i++) {
+					int block = touched[i];
+					int split = first[block] + marked[block];
+					marked[block] = 0;
+					if(split == last[block]) continue; // Every state was marked, nothing to split
+
+					int newBlock = blocks++;
+					first[newBlock] = first[block];
+					last[newBlock] = split;
+					first[block] = split;
+					for(int p=first[newBlock]; p<last[newBlock]; p++)
+						blockOf[elements[p]] = newBlock;
+
+					if(inWorkList[block]) {
+						workList[pending++] = newBlock;
+						inWorkList[newBlock] = true;
+					} else { // Only the smaller half needs to be used as a splitter
+						int smaller = (last[newBlock] - first[newBlock] <= last[block] - first[block]) ? newBlock : block;
+						workList[pending++] = smaller;
+						inWorkList[smaller] = true;
+					}
+				}
+			}
+		}
+
+		/* One state per block */
+		int[] minimalTable = new int[blocks * columns];
+		long[] acceptBits = new long[(blocks + 63) / 64];
+		long[] endAcceptBits = new long[(blocks + 63) / 64];
+		for(int b=0; b<blocks; b++) {
+			int representative = elements[first[b]];
+			for(int c=0; c<columns; c++)
+				minimalTable[b * columns + c] = blockOf[table[representative * columns + c]];
+			if(acceptance[representative] == ACCEPTING) acceptBits[b >> 6] |= 1L << b;
+			if(acceptance[representative] != REJECTING) endAcceptBits[b >> 6] |= 1L << b;
+		}
+		return new DFA(alphabet, blocks, blockOf[0], minimalTable, acceptBits, endAcceptBits, acceptsEmpty);
+	}
+
+	boolean isAccepting(int state) {
+		return (acceptBits[state >> 6] & (1L << state)) != 0;
+	}
+
+	boolean isAcceptingAtEnd(int state) { // Whether the state accepts if the input ends in it
+		return (endAcceptBits[state >> 6] & (1L << state)) != 0;
+	}
+
+	int getDeadState() { // -1 if there is none
+		return deadState;
+	}
+
+	boolean acceptsEmpty() { // Whether the empty input is accepted, where both '^' and '$' hold
+		return acceptsEmpty;
+	}
+
+	/* Used to run the DFA one character at a time, see StreamMatcher */
+	int getStartState() {
+		return startState;
+	}
+
+	int next(int state, int cls) {
+		return table[state * columns + cls];
+	}
+
+	Alphabet getAlphabet() {
+		return alphabet;
+	}
+
+	public boolean accepts(CharSequence s) {
+		// Checks whether this automaton accepts the whole of 's' (the DFA must be anchored)
+		if(s.length() == 0) return acceptsEmpty;
+		int state = startState;
+		for(int i=0; i<s.length(); i++) {
+			state = table[state * columns + alphabet.classOf(s.charAt(i))];
+			if(state == deadState) return false; // Nothing left that could accept
+		}
+		return isAcceptingAtEnd(state);
+	}
+
+	public boolean acceptsLine(CharSequence line) {
+		/* Checks whether this automaton accepts any part of 'line' (the DFA must be unanchored).
+		 * Stops at the first accepting state, or at the dead state once an anchored pattern has
+		 * failed. */
+		return acceptsLine(line, 0);
+	}
+
+	public boolean acceptsLine(CharSequence line, int from) {
+		// Starts reading at 'from', see FirstCharacters. Every character is one lookup in the minimal table
+		if(line.length() == 0) return acceptsEmpty;
+		int state = startState;
+		if(isAccepting(state)) return true;
+		for(int i=from; i<line.length(); i++) {
+			state = table[state * columns + alphabet.classOf(line.charAt(i))];
+			if(isAccepting(state)) return true;
+			if(state == deadState) return false;
+		}
+		return isAcceptingAtEnd(state);
+	}
+
+	public boolean acceptsLine(ByteBuffer bytes, int from, int to) {
+		/* Same as acceptsLine(CharSequence), for the bytes from..to-1 of 'bytes'. The automaton
+		 * must have been built from CompiledNFA.toUTF8() */
+		if(from == to) return acceptsEmpty;
+		int state = startState;
+		if(isAccepting(state)) return true;
+		for(int i=from; i<to; i++) {
+			state = table[state * columns + alphabet.classOfByte(bytes.get(i))];
+			if(isAccepting(state)) return true;
+			if(state == deadState) return false;
+		}
+		return isAcceptingAtEnd(state);
+	}
+
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	public String toString() {
+		String stringRepresentation = "Starting state : " + startState + "\nAccept states : [";
+		for(int s=0, found=0; s<stateCount; s++) {
+			if(isAccepting(s)) stringRepresentation += (found++ > 0 ? ", " : "") + s;
+		}
+		return stringRepresentation + "]\nStates : " + stateCount + ", character classes : " + columns + "\n";
+	}
+
+	public static void test() { // Method to test the DFA class
+		System.out.println("Testing...");
+
+		/* The minimal DFAs must accept the same strings as the NFA, which matches with the lazily
+		 * built DFA or the bit-parallel automaton until compileDFA is called */
+		String[] patterns = {"(a|b)*abb", "a(b|c)*d?", "(ab){2,3}c+", "((a|b)*c){0,2}", "(a*)*b", "\u03B5|a", "^ab|^ac|b$", "^(a|b)*$",
+				"[a-c]+d", "a.c", "[^a]b", "\\w+\\d", "\u00E9|\u4E2D"};
+		Random random = new Random(1);
+		for(String pattern: patterns) {
+			NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression());
+			DFA wholeString = build(nfa.compile(), false, DEFAULT_STATE_LIMIT);
+			DFA line = build(nfa.compile(), true, DEFAULT_STATE_LIMIT);
+			DFA utf8Line = build(nfa.compileUTF8(), true, DEFAULT_STATE_LIMIT);
+			for(int i=0; i<2000; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(10);
+				for(int k=0; k<length; k++)
+					sb.append("abcdx1_\u00E9\u4E2D".charAt(random.nextInt(9)));
+				String s = sb.toString();
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				if(wholeString.accepts(s) != nfa.accepts(s) || line.acceptsLine(s) != nfa.acceptsLine(s)
+						|| utf8Line.acceptsLine(ByteBuffer.wrap(bytes), 0, bytes.length) != nfa.acceptsLine(s))
+					throw new RuntimeException(pattern + " is matched differently by its minimal DFA for " + s);
+			}
+		}
+		System.out.println("Minimal DFAs match the same strings as the NFA");
+
+		/* (a|b)*abb has the four states of the textbook DFA, plus a dead state for the characters
+		 * other than a and b when the whole string must match */
+		CompiledNFA abb = NFA.getNFAfromPostfix(new InfixToPostfixConverter("(a|b)*abb").getPosfixExpression()).compile();
+		DFA wholeString = build(abb, false, DEFAULT_STATE_LIMIT);
+		if(wholeString.getStateCount() - (wholeString.getDeadState() >= 0 ? 1 : 0) != 4) throw new RuntimeException("(a|b)*abb has " + wholeString);
+		if(build(abb, true, DEFAULT_STATE_LIMIT).getStateCount() != 4) throw new RuntimeException("(a|b)*abb has " + build(abb, true, DEFAULT_STATE_LIMIT));
+		System.out.println("(a|b)*abb is minimized to 4 states");
+
+		/* The whole-string DFA of (a|b)*a(a|b){10} needs 2^11 states, so it is not built under a lower limit */
+		CompiledNFA blowup = NFA.getNFAfromPostfix(new InfixToPostfixConverter("(a|b)*a(a|b){10}").getPosfixExpression()).compile();
+		if(build(blowup, false, 1000) != null) throw new RuntimeException("The state limit is not kept");
+		if(build(blowup, false, DEFAULT_STATE_LIMIT) == null) throw new RuntimeException("(a|b)*a(a|b){10} fits in " + DEFAULT_STATE_LIMIT + " states");
+		System.out.println("DFAs over the state limit are not built");
+
+		System.out.println("All tests passed!");
+	}
+
+}
@@ -16,7 +16,10 @@ public class Edge {
 	
 	private int sourceState;
 	private int destinationState;
-	private char symbol;
+	private char symbol; // Lowest character the edge reads
+	private char highSymbol; // Highest character the edge reads, the same as symbol unless the edge reads a range
+	private boolean epsilon;
+	private char anchor; // '^' or '$' for an epsilon edge that may only be followed at the start or the end of the input
 	
 	public int getSourceState() {
 		return sourceState;
@@ -30,26 +33,56 @@ public class Edge {
 		return symbol;
 	}
 	
+	public char getHighSymbol() {
+		return highSymbol;
+	}
+	
 	public Edge(int sourceState, int destinationState, char symbol) {
+		this(sourceState, destinationState, symbol, symbol);
+	}
+	
+	public Edge(int sourceState, int destinationState, char lowSymbol, char highSymbol) {
+		// An edge that reads any character from lowSymbol to highSymbol
 		this.sourceState = sourceState;
 		this.destinationState = destinationState;
-		this.symbol = symbol;
+		this.symbol = lowSymbol;
+		this.highSymbol = highSymbol;
 	}
 	
 	public static Edge epsilonTransition(int source, int destination) {
-		return new Edge(source, destination, EPSILON);
+		Edge edge = new Edge(source, destination, EPSILON);
+		edge.epsilon = true; // So an edge reading the epsilon character itself is not mistaken for one
+		return edge;
+	}
+	
+	public static Edge assertion(int source, int destination, char anchor) {
+		/* An epsilon edge that may only be followed at the start of the input, for the anchor '^',
+		 * or at its end, for '$' */
+		Edge edge = epsilonTransition(source, destination);
+		edge.anchor = anchor;
+		return edge;
 	}
 	
 	public boolean isEpsilonTransition() {
-		return symbol == EPSILON;
+		return epsilon;
+	}
+	
+	public char getAnchor() { // '^' or '$' for an assertion, 0 for other edges
+		return anchor;
 	}
 	
 	public String toString() {
 		String strRepresentation =  "(" + sourceState + ", " + destinationState + ", ";
-		if (isEpsilonTransition()) {
+		if (anchor != 0) {
+			strRepresentation += "" +  anchor + ")";
+		} else if (isEpsilonTransition()) {
 			strRepresentation += "" +  symbol + ")";
 		} else {
-			strRepresentation += "'" +  symbol + "')";
+			strRepresentation += "'" +  symbol + "'";
+			if (highSymbol != symbol) {
+				strRepresentation += "-'" + highSymbol + "'";
+			}
+			strRepresentation += ")";
 		}
 		return strRepresentation;
 	}
@@ -0,0 +1,237 @@
+/*
+ * EngineMetrics.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class EngineMetrics implements EngineMetricsMBean {
+
+	/* Counters for the compile and match paths of the engine, shared by every pattern and thread.
+	 * They are LongAdders, so threads that count at the same time do not slow each other down.
+	 * register() makes them visible through JMX, for example in JConsole.
+	 *
+	 * The events below are recorded by JDK Flight Recorder when a recording is running, for
+	 * example with -XX:StartFlightRecording on Java 11 or later. Compiling a pattern, scanning
+	 * a file and matching a line that takes longer than the threshold each give one event, so
+	 * a recording shows which pattern or which input burned the CPU, with a stack trace. The
+	 * begin methods return null when nothing is recorded, see FlightRecorderEventType. */
+
+	static final LongAdder patternsConverted = new LongAdder();
+	static final LongAdder convertNanos = new LongAdder();
+	static final LongAdder nfasBuilt = new LongAdder();
+	static final LongAdder buildNanos = new LongAdder();
+	static final LongAdder nfaStates = new LongAdder();
+	static final LongAdder nfaEdges = new LongAdder();
+	static final LongAdder closuresPrecomputed = new LongAdder();
+	static final LongAdder closureSearches = new LongAdder();
+	static final LongAdder linesScanned = new LongAdder();
+	static final LongAdder charactersScanned = new LongAdder();
+	static final LongAdder filesScanned = new LongAdder();
+	static final LongAdder fileBytes = new LongAdder();
+	static final LongAdder fileNanos = new LongAdder();
+	static final LongAdder dfaStatesBuilt = new LongAdder();
+	static final LongAdder dfaStateSetSizes = new LongAdder(); // Sum of the number of NFA states in each DFA state built
+	static final LongAdder dfaCharactersRead = new LongAdder();
+	static final LongAdder dfaTransitionsComputed = new LongAdder(); // Characters read whose transition was not cached
+	static final LongAdder dfaCacheFlushes = new LongAdder();
+
+	private static final EngineMetrics instance = new EngineMetrics();
+	private static final String OBJECT_NAME = "RegexEngine:type=EngineMetrics";
+	private static boolean registered;
+
+	private EngineMetrics() {}
+
+	public static EngineMetrics get() {
+		return instance;
+	}
+
+	public static synchronized void register() {
+		// Makes the counters visible through the platform MBean server, does nothing if they already are
+		if(registered) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+			registered = true;
+		} catch (JMException e) {
+			throw new RuntimeException("Could not register " + OBJECT_NAME, e);
+		}
+	}
+
+	/* Events recorded by JDK Flight Recorder */
+
+	private static final FlightRecorderEventType convertEvents = new FlightRecorderEventType("Convert", "Regex Conversion",
+			"A regular expression converted to postfix form", null,
+			new String[] {"Pattern", "Postfix Length"}, new Class<?>[] {String.class, int.class});
+	private static final FlightRecorderEventType buildEvents = new FlightRecorderEventType("Build", "NFA Construction",
+			"An NFA built from a postfix expression", null,
+			new String[] {"Postfix Expression", "States", "Edges", "Bit-Parallel"}, new Class<?>[] {String.class, int.class, int.class, boolean.class});
+	private static final FlightRecorderEventType fileScanEvents = new FlightRecorderEventType("FileScan", "File Scan",
+			"A file searched for accepted lines", null,
+			new String[] {"File", "Mode", "Bytes"}, new Class<?>[] {String.class, String.class, long.class});
+	private static final FlightRecorderEventType slowLineEvents = new FlightRecorderEventType("SlowLine", "Slow Line",
+			"A line that took long to match", "10 ms",
+			new String[] {"Line Length", "Line Start"}, new Class<?>[] {int.class, String.class});
+
+	private static final int LINE_START_LENGTH = 100; // Characters of a slow line that are recorded
+
+	static Object beginConvert() {
+		return convertEvents.begin();
+	}
+
+	static void converted(Object event, String pattern, int postfixLength, long startTime) {
+		// Counts a pattern converted since 'startTime', and records 'event' if it is not null
+		patternsConverted.increment();
+		convertNanos.add(System.nanoTime() - startTime);
+		if(event != null) FlightRecorderEventType.commit(event, pattern, postfixLength);
+	}
+
+	static Object beginBuild() {
+		return buildEvents.begin();
+	}
+
+	static void built(Object event, String postfix, int states, int edges, boolean bitParallel, long startTime) {
+		// Counts an NFA built since 'startTime', and records 'event' if it is not null
+		nfasBuilt.increment();
+		buildNanos.add(System.nanoTime() - startTime);
+		nfaStates.add(states);
+		nfaEdges.add(edges);
+		if(event != null) FlightRecorderEventType.commit(event, postfix, states, edges, bitParallel);
+	}
+
+	static Object beginLine() {
+		return slowLineEvents.begin();
+	}
+
+	static void lineMatched(Object event, String line) {
+		// Ends 'event', which was begun before matching 'line', and records it if it took long enough
+		FlightRecorderEventType.commit(event, line.length(), line.length() > LINE_START_LENGTH ? line.substring(0, LINE_START_LENGTH) : line);
+	}
+
+	static Object beginFileScan() {
+		return fileScanEvents.begin();
+	}
+
+	static void fileScanned(Object event, String fileName, String mode, long startTime) {
+		// Counts a file that acceptedLines started to scan at 'startTime', and records 'event' if it is not null
+		long bytes = new File(fileName + ".txt").length();
+		filesScanned.increment();
+		fileBytes.add(bytes);
+		fileNanos.add(System.nanoTime() - startTime);
+		if(event != null) FlightRecorderEventType.commit(event, fileName + ".txt", mode, bytes);
+	}
+
+	/* EngineMetricsMBean */
+
+	private static double average(LongAdder total, LongAdder count) {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	public long getPatternsConverted() {
+		return patternsConverted.sum();
+	}
+
+	public double getAverageConvertMicros() {
+		return average(convertNanos, patternsConverted) / 1e3;
+	}
+
+	public long getNFAsBuilt() {
+		return nfasBuilt.sum();
+	}
+
+	public double getAverageBuildMicros() {
+		return average(buildNanos, nfasBuilt) / 1e3;
+	}
+
+	public double getAverageNFAStates() {
+		return average(nfaStates, nfasBuilt);
+	}
+
+	public double getAverageNFAEdges() {
+		return average(nfaEdges, nfasBuilt);
+	}
+
+	public long getClosuresPrecomputed() {
+		return closuresPrecomputed.sum();
+	}
+
+	public long getClosureSearches() {
+		return closureSearches.sum();
+	}
+
+	public long getLinesScanned() {
+		return linesScanned.sum();
+	}
+
+	public long getCharactersScanned() {
+		return charactersScanned.sum();
+	}
+
+	public long getFilesScanned() {
+		return filesScanned.sum();
+	}
+
+	public long getFileBytesScanned() {
+		return fileBytes.sum();
+	}
+
+	public double getFileBytesPerSecond() {
+		long nanos = fileNanos.sum();
+		return nanos == 0 ? 0 : fileBytes.sum() * 1e9 / nanos;
+	}
+
+	public long getDFAStatesBuilt() {
+		return dfaStatesBuilt.sum();
+	}
+
+	public double getAverageActiveStateSetSize() {
+		return average(dfaStateSetSizes, dfaStatesBuilt);
+	}
+
+	public double getDFACacheHitRate() {
+		long read = dfaCharactersRead.sum();
+		return read == 0 ? 0 : Math.max(0, 1 - (double) dfaTransitionsComputed.sum() / read);
+	}
+
+	public long getDFACacheFlushes() {
+		return dfaCacheFlushes.sum();
+	}
+
+	public double getPatternCacheHitRate() {
+		PatternCache cache = PatternCache.getShared();
+		long hits = cache.getHitCount(), lookups = hits + cache.getMissCount();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public void reset() {
+		LongAdder[] counters = {patternsConverted, convertNanos, nfasBuilt, buildNanos, nfaStates, nfaEdges,
+				closuresPrecomputed, closureSearches, linesScanned, charactersScanned, filesScanned, fileBytes, fileNanos,
+				dfaStatesBuilt, dfaStateSetSizes, dfaCharactersRead, dfaTransitionsComputed, dfaCacheFlushes};
+		for(LongAdder counter: counters)
+			counter.reset();
+	}
+
+	public String toString() {
+		return String.format(Locale.ROOT, "EngineMetrics [patterns=%d (%.1f us), NFAs=%d (%.1f us, %.1f states, %.1f edges), "
+				+ "closures=%d+%d, lines=%d, characters=%d, files=%d (%.0f bytes/s), DFA states=%d (%.1f NFA states), "
+				+ "DFA cache hit rate=%.4f, flushes=%d]",
+				getPatternsConverted(), getAverageConvertMicros(), getNFAsBuilt(), getAverageBuildMicros(), getAverageNFAStates(),
+				getAverageNFAEdges(), getClosuresPrecomputed(), getClosureSearches(), getLinesScanned(), getCharactersScanned(),
+				getFilesScanned(), getFileBytesPerSecond(), getDFAStatesBuilt(), getAverageActiveStateSetSize(),
+				getDFACacheHitRate(), getDFACacheFlushes());
+	}
+
+}
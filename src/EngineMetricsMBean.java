@@ -0,0 +1,46 @@
+/*
+ * EngineMetricsMBean.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+public interface EngineMetricsMBean {
+
+	/* The counters of EngineMetrics as seen through JMX, under the name RegexEngine:type=EngineMetrics.
+	 * Counts are totals since the start of the JVM or the last reset, averages are over the same period.
+	 * Lines and the characters read by lazily built DFAs are added in batches, so they may lag a little. */
+
+	long getPatternsConverted(); // By InfixToPostfixConverter
+	double getAverageConvertMicros();
+
+	long getNFAsBuilt(); // By NFA.getNFAfromPostfix
+	double getAverageBuildMicros();
+	double getAverageNFAStates();
+	double getAverageNFAEdges();
+
+	long getClosuresPrecomputed(); // Epsilon closures computed when an NFA is compiled
+	long getClosureSearches(); // Epsilon closures searched while matching, for NFAs whose closures were too large to precompute
+
+	long getLinesScanned(); // By acceptsLine, whatever calls it
+	long getCharactersScanned(); // Characters, or bytes for UTF-8 lines, in those lines
+
+	long getFilesScanned(); // By acceptedLines and acceptedLinesMapped
+	long getFileBytesScanned();
+	double getFileBytesPerSecond();
+
+	long getDFAStatesBuilt(); // By the lazily built DFAs
+	double getAverageActiveStateSetSize(); // Number of NFA states that are active together, averaged over the DFA states built
+	double getDFACacheHitRate(); // Share of the characters read by lazily built DFAs whose transition was cached
+	long getDFACacheFlushes();
+
+	double getPatternCacheHitRate(); // Of PatternCache.getShared()
+
+	void reset();
+
+}
@@ -0,0 +1,81 @@
+/*
+ * FirstCharacters.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.nio.ByteBuffer;
+
+public class FirstCharacters {
+
+	/* The characters a match can start with, the symbols on the edges out of the closure of the
+	 * initial state. Before the automaton reads a line, Matcher skips every position where no
+	 * match can start, and in most lines of a log that is all of them. In a line automaton the
+	 * initial state loops on such characters, so starting it at the first position that is left
+	 * gives the same answer as starting it at 0.
+	 *
+	 * This is the contract of acceptsLine(line, from) in DFA, LazyDFA and BitParallelNFA: it
+	 * reads 'line' from 'from' on, and gives the same answer as acceptsLine(line) only if no
+	 * match can start before 'from', which is what indexIn finds.
+	 *
+	 * Characters below 256 are looked up in a table, the others in the class. A single first
+	 * character is found with String.indexOf, which the JIT compiles to vector instructions,
+	 * and a single first byte eight bytes at a time. */
+
+	private final CharClass characters;
+	private final boolean[] table = new boolean[256]; // Whether each character below 256 is one
+	private final int single; // The only first character, or -1 if there are several
+	private final long singleRepeated; // The only first byte in every byte of a long
+
+	private FirstCharacters(CharClass characters) {
+		this.characters = characters;
+		for(int c=0; c<table.length; c++)
+			table[c] = characters.contains((char) c);
+		boolean one = characters.getRangeCount() == 1 && characters.getLow(0) == characters.getHigh(0);
+		single = one ? characters.getLow(0) : -1;
+		singleRepeated = (single >= 0 && single < 256) ? 0x0101010101010101L * single : 0;
+	}
+
+	static FirstCharacters of(CharClass characters) {
+		// Returns null if 'characters' is null or any character can start a match, so nothing would be skipped
+		if(characters == null || characters.getRangeCount() == 0) return null;
+		if(characters.getRangeCount() == 1 && characters.getLow(0) == 0 && characters.getHigh(0) == Character.MAX_VALUE) return null;
+		return new FirstCharacters(characters);
+	}
+
+	public CharClass getCharacters() {
+		return characters;
+	}
+
+	public int indexIn(CharSequence line, int from) {
+		// Returns the first position at or after 'from' where a match can start, or -1 if there is none
+		if(single >= 0 && line instanceof String) return ((String) line).indexOf(single, from);
+		for(int i=from; i<line.length(); i++) {
+			char c = line.charAt(i);
+			if(c < 256 ? table[c] : characters.contains(c)) return i;
+		}
+		return -1;
+	}
+
+	public int indexIn(ByteBuffer bytes, int from, int to) {
+		/* Same as indexIn(CharSequence), for the bytes from..to-1 of 'bytes'. Only for the first
+		 * characters of an automaton built from CompiledNFA.toUTF8(), whose symbols are bytes. */
+		int i = from;
+		if(singleRepeated != 0) { // Look for the byte in eight bytes at once
+			for(; i+8<=to; i+=8) {
+				long word = bytes.getLong(i) ^ singleRepeated; // The bytes equal to it are now zero
+				if(((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) != 0) break;
+			}
+		}
+		for(; i<to; i++)
+			if(table[bytes.get(i) & 0xFF]) return i;
+		return -1;
+	}
+
+}
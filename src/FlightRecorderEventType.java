@@ -0,0 +1,135 @@
+/*
+ * FlightRecorderEventType.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class FlightRecorderEventType {
+
+	/* A kind of event recorded by JDK Flight Recorder, see EngineMetrics. The engine targets
+	 * Java 8, which has no jdk.jfr module, so nothing here refers to it directly: the event
+	 * type is made at runtime with jdk.jfr.EventFactory, and its events are used through
+	 * method handles found by reflection. Without jdk.jfr, or before Flight Recorder has been
+	 * started, begin returns null and nothing is recorded.
+	 *
+	 * The type is only made once a recording has started, since making it would start Flight
+	 * Recorder otherwise, which takes a few hundred milliseconds. */
+
+	private static final String CATEGORY = "Regex Engine";
+
+	/* Null if there is no jdk.jfr module */
+	private static final MethodHandle IS_INITIALIZED = method("FlightRecorder", "isInitialized");
+	private static final MethodHandle NEW_EVENT = method("EventFactory", "newEvent");
+	private static final MethodHandle BEGIN = method("Event", "begin");
+	private static final MethodHandle END = method("Event", "end");
+	private static final MethodHandle SHOULD_COMMIT = method("Event", "shouldCommit");
+	private static final MethodHandle SET = method("Event", "set", int.class, Object.class);
+	private static final MethodHandle COMMIT = method("Event", "commit");
+
+	private final String name;
+	private final String label;
+	private final String description;
+	private final String threshold; // Shortest duration recorded, like "10 ms", or null to record every event
+	private final String[] fieldLabels; // The name of a field is its label in camel case
+	private final Class<?>[] fieldTypes;
+	private volatile Object factory; // The jdk.jfr.EventFactory, made by the first event
+
+	FlightRecorderEventType(String name, String label, String description, String threshold, String[] fieldLabels, Class<?>[] fieldTypes) {
+		this.name = name;
+		this.label = label;
+		this.description = description;
+		this.threshold = threshold;
+		this.fieldLabels = fieldLabels;
+		this.fieldTypes = fieldTypes;
+	}
+
+	private static Class<?> jfrClass(String name) throws ClassNotFoundException {
+		return Class.forName("jdk.jfr." + name, false, FlightRecorderEventType.class.getClassLoader());
+	}
+
+	private static MethodHandle method(String className, String methodName, Class<?>... parameterTypes) {
+		// The public method of a jdk.jfr class, or null if there is no such class
+		try {
+			return MethodHandles.publicLookup().unreflect(jfrClass(className).getMethod(methodName, parameterTypes));
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	static boolean recording() { // Whether Flight Recorder has been started
+		try {
+			return IS_INITIALIZED != null && (boolean) IS_INITIALIZED.invoke();
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	Object begin() {
+		// Returns a new event of this type that has begun, or null if Flight Recorder has not been started
+		if(!recording()) return null;
+		try {
+			Object event = NEW_EVENT.invoke(factory());
+			BEGIN.invoke(event);
+			return event;
+		} catch (Throwable e) {
+			throw new RuntimeException("Could not record " + name, e);
+		}
+	}
+
+	static void commit(Object event, Object... values) {
+		// Ends 'event' and records it with the values of its fields, in order, if it lasted long enough
+		try {
+			END.invoke(event);
+			if(!(boolean) SHOULD_COMMIT.invoke(event)) return;
+			for(int i=0; i<values.length; i++)
+				SET.invoke(event, i, values[i]);
+			COMMIT.invoke(event);
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Object factory() throws ReflectiveOperationException {
+		if(factory == null) {
+			synchronized(this) {
+				if(factory == null) factory = createFactory();
+			}
+		}
+		return factory;
+	}
+
+	private Object createFactory() throws ReflectiveOperationException {
+		// Same as annotating an event class with @Name, @Label, @Category, @Description and @Threshold
+		Constructor<?> annotation = jfrClass("AnnotationElement").getConstructor(Class.class, Object.class);
+		Constructor<?> field = jfrClass("ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+
+		List<Object> annotations = new ArrayList<Object>();
+		annotations.add(annotation.newInstance(jfrClass("Name"), "RegexEngine." + name));
+		annotations.add(annotation.newInstance(jfrClass("Label"), label));
+		annotations.add(annotation.newInstance(jfrClass("Category"), new String[] {CATEGORY}));
+		annotations.add(annotation.newInstance(jfrClass("Description"), description));
+		if(threshold != null) annotations.add(annotation.newInstance(jfrClass("Threshold"), threshold));
+
+		List<Object> fields = new ArrayList<Object>();
+		for(int i=0; i<fieldLabels.length; i++) {
+			String fieldName = fieldLabels[i].replaceAll("[^A-Za-z]", "");
+			fieldName = Character.toLowerCase(fieldName.charAt(0)) + fieldName.substring(1);
+			fields.add(field.newInstance(fieldTypes[i], fieldName, Collections.singletonList(annotation.newInstance(jfrClass("Label"), fieldLabels[i]))));
+		}
+		return jfrClass("EventFactory").getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+	}
+
+}
@@ -17,9 +17,13 @@ import java.awt.Font;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -30,9 +34,15 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 import javax.swing.text.Highlighter;
 import javax.swing.text.Highlighter.HighlightPainter;
 
@@ -53,6 +63,17 @@ public class GUI {
 	private JScrollPane scrollPane;
 	private JButton openButton;
 	
+	/* State of the search. Matching runs on a SearchWorker, never on the Event Dispatch Thread, and the
+	 * matches are cached per line of the text area: lineMatches has one entry for each line, or null
+	 * for lines that still have to be searched. When the text is edited only the lines that changed
+	 * are searched again. All of these are only used on the Event Dispatch Thread. */
+	private NFA nfa; // The pattern being highlighted, null if there is none
+	private ArrayList<LineMatches> lineMatches = new ArrayList<LineMatches>();
+	private int matchCount; // Number of matches highlighted
+	private SearchWorker worker; // The search running now, if any
+	private boolean searchScheduled; // A search starts once the current edit has been handled
+	private final DocumentListener documentListener = new TextAreaListener();
+	
 	public void displayGUI() { // function to display the GUI components
 		
 		/* Set Up: JFrame */
@@ -112,6 +133,8 @@ public class GUI {
 		textArea.setEditable(true);
 		textArea.setFont(new Font("Arial", Font.PLAIN, 18));
 		textArea.setBorder(new EmptyBorder(10,10,10,10));
+		textArea.getDocument().addDocumentListener(documentListener);
+		textArea.addPropertyChangeListener("document", new DocumentChange()); // 'read' replaces the document when a file is opened
 		
 		/* Set Up: JScrollPane (So it is possible to scroll text area) */
 		scrollPane = new JScrollPane(textArea);
@@ -143,48 +166,236 @@ public class GUI {
 		
 		@Override
 		public void actionPerformed(ActionEvent e) { // Search text area for matching regular expression
-			boolean currentHighlight = false; // false => highlightColor1; true => highlightColor2
-			Highlighter highlighter = textArea.getHighlighter(); // Get the highlighter of the text area
-			HighlightPainter painter;
-			
 			try{
-				InfixToPostfixConverter ifpf = new InfixToPostfixConverter(textField.getText()); // Convert the regular expression to postfix form
-				NFA nfa = NFA.getNFAfromPostfix(ifpf.getPosfixExpression()); // Get the NFA for that postfix expression
-				String text = textArea.getText(); // Set the variable 'text' to the current text in the text area
-				highlighter.removeAllHighlights(); // Clear all highlights before we start highlighting again
-				int count = 0; // Used to count number of pattern matches
-				int skip = 0; // Used to skip over lines
-				int lineCount = 0; // Used to keep track of which line we are on
-				
-				/* For each line of the text, start by trying to match until the end of the line (i=0, j=line.length()), if there is no match
-				 * try again with one character less (i=0, j=line.length()-1) and so on. Do this for all i from 0 to line.length()-1. If we find a match,
-				 * highlight it and carry on searching the line with this procedure by setting i = j */
-				for(String line: text.split("\r\n|\r|\n")) {
-					for(int i=0;i<line.length(); i++) {
-						for(int j=line.length(); j>=i+1; j--) {
-							if(nfa.accepts(line.substring(i, j))) {
-								try {
-									painter = new DefaultHighlighter.DefaultHighlightPainter(currentHighlight ? highlightColor1 : highlightColor2);
-									highlighter.addHighlight(skip + i, skip + j, painter); // 'Highlighter' takes two indexes and a painter as input
-									count++;
-									i = j-1; // i = j-1 since the for loop increases i again
-									currentHighlight = !currentHighlight; // Switch highlight color
-									break;
-								} catch (BadLocationException e2) { // 'Highlighter' may throw an error
-									e2.printStackTrace();
-								}
-							}
-						}
+				nfa = PatternCache.getShared().get(textField.getText()); // Get the NFA for the regular expression, compiling it only if it is new
+			} catch (Exception e1) { // 'InfixToPostfixConverter' may throw an error while compiling
+				nfa = null;
+				detailLabel.setText("Invalid regular expression!"); // If there is an error, display an error message
+			}
+			searchAll(); // Also stops the search for the previous expression
+		}
+	}
+	
+	private void searchAll() {
+		// Forgets every match found so far and searches the whole text again with 'nfa'
+		stopSearch();
+		textArea.getHighlighter().removeAllHighlights(); // Clear all highlights before we start highlighting again
+		matchCount = 0;
+		lineMatches.clear();
+		if(nfa == null) return;
+		
+		int lines = textArea.getDocument().getDefaultRootElement().getElementCount();
+		for(int i=0; i<lines; i++)
+			lineMatches.add(null);
+		startSearch();
+	}
+	
+	private void stopSearch() {
+		if(worker != null) {
+			worker.cancel(false);
+			worker = null; // Its results are ignored from now on, even the ones already published
+		}
+	}
+	
+	private void scheduleSearch() {
+		/* Searches the lines that changed once the current edit is done. A paste that replaces a
+		 * selection makes two edits, they are searched together. */
+		stopSearch();
+		if(nfa == null || searchScheduled) return;
+		searchScheduled = true;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				searchScheduled = false;
+				if(nfa != null) startSearch();
+			}
+		});
+	}
+	
+	private void startSearch() {
+		// Starts a SearchWorker for all the lines that have no matches cached
+		stopSearch();
+		Element root = textArea.getDocument().getDefaultRootElement();
+		int first = lineMatches.indexOf(null);
+		if(first < 0) {
+			showCount(false);
+			return;
+		}
+		int last = lineMatches.lastIndexOf(null);
+		
+		/* Copy the text of the lines to search, since the worker must not read the document while it is being edited */
+		int from = root.getElement(first).getStartOffset();
+		int to = root.getElement(last).getEndOffset() - 1; // Without the line break
+		String text;
+		try {
+			text = textArea.getDocument().getText(from, to - from);
+		} catch (BadLocationException e) { // Cannot happen, the offsets come from the document
+			throw new RuntimeException(e);
+		}
+		
+		int count = 0;
+		for(int i=first; i<=last; i++)
+			if(lineMatches.get(i) == null) count++;
+		int[] lines = new int[count], starts = new int[count], ends = new int[count];
+		count = 0;
+		for(int i=first; i<=last; i++) {
+			if(lineMatches.get(i) != null) continue;
+			Element line = root.getElement(i);
+			lines[count] = i;
+			starts[count] = line.getStartOffset() - from;
+			ends[count] = line.getEndOffset() - 1 - from;
+			count++;
+		}
+		
+		worker = new SearchWorker(nfa, text, lines, starts, ends);
+		showCount(true);
+		worker.execute();
+	}
+	
+	private void forgetLine(int line) {
+		// Removes the highlights of 'line', which has to be searched again
+		LineMatches matches = lineMatches.get(line);
+		if(matches == null) return;
+		Highlighter highlighter = textArea.getHighlighter();
+		for(Object highlight: matches.highlights)
+			highlighter.removeHighlight(highlight);
+		matchCount -= matches.highlights.length;
+		lineMatches.set(line, null);
+	}
+	
+	private void showCount(boolean searching) {
+		detailLabel.setText(matchCount + ((matchCount == 1) ? " match" : " matches") + " found" + (searching ? " so far..." : "")); // Display number of patterns matched
+	}
+	
+	static class LineMatches { // The matches of one line, as found by a SearchWorker
+		final int line;
+		final int[] bounds; // The start and the end of every match, relative to the start of the line
+		Object[] highlights; // The highlights added for them
+		
+		LineMatches(int line, int[] bounds) {
+			this.line = line;
+			this.bounds = bounds;
+		}
+	}
+	
+	class SearchWorker extends SwingWorker<Void, LineMatches> { // Finds the matches of some lines in the background
+		
+		private final NFA nfa;
+		private final String text;
+		private final int[] lines; // Line numbers, and where each of these lines starts and ends in 'text'
+		private final int[] starts;
+		private final int[] ends;
+		
+		SearchWorker(NFA nfa, String text, int[] lines, int[] starts, int[] ends) {
+			this.nfa = nfa;
+			this.text = text;
+			this.lines = lines;
+			this.starts = starts;
+			this.ends = ends;
+		}
+		
+		@Override
+		protected Void doInBackground() {
+			/* For each line, find the leftmost-longest match starting from the beginning of the line. If there is one,
+			 * keep it and carry on searching the line from the end of the match. Empty matches are not highlighted,
+			 * the search just carries on from the next character. Every line is published, even without matches,
+			 * so that it is cached; SwingWorker hands them to 'process' in batches. */
+			ArrayList<Integer> bounds = new ArrayList<Integer>();
+			for(int i=0; i<lines.length; i++) {
+				if(isCancelled()) return null; // A new expression was entered or the text was edited
+				String line = text.substring(starts[i], ends[i]);
+				bounds.clear();
+				int from = 0;
+				while(from < line.length()) {
+					Match match = nfa.find(line, from);
+					if(match == null) break; // No more matches on this line
+					if(match.isEmpty()) {
+						from = match.getStart() + 1;
+						continue;
 					}
-					skip = textArea.getLineEndOffset(lineCount);
-					lineCount++;
+					bounds.add(match.getStart());
+					bounds.add(match.getEnd());
+					from = match.getEnd();
 				}
-				
-				detailLabel.setText(count + ((count == 1) ? " match" : " matches") + " found"); // Display number of patterns matched
-			} catch (Exception e1) { // 'InfixToPostfixConverter' may throw an error
-				detailLabel.setText("Invalid regular expression!"); // If there is an error, display an error message
-				highlighter.removeAllHighlights();
+				int[] result = new int[bounds.size()];
+				for(int k=0; k<result.length; k++)
+					result[k] = bounds.get(k);
+				publish(new LineMatches(lines[i], result));
 			}
+			return null;
+		}
+		
+		@Override
+		protected void process(List<LineMatches> batch) { // Highlights a batch of lines, on the Event Dispatch Thread
+			if(worker != this) return; // Stale, the lines may have moved since
+			Element root = textArea.getDocument().getDefaultRootElement();
+			Highlighter highlighter = textArea.getHighlighter(); // Get the highlighter of the text area
+			for(LineMatches matches: batch) {
+				int offset = root.getElement(matches.line).getStartOffset();
+				matches.highlights = new Object[matches.bounds.length / 2];
+				for(int k=0; k<matches.highlights.length; k++) {
+					/* Neighbouring matches of a line get different colors. Colors restart on every line, so
+					 * that a line searched again after an edit does not change the colors of the others. */
+					HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(k % 2 == 1 ? highlightColor1 : highlightColor2);
+					try {
+						matches.highlights[k] = highlighter.addHighlight(offset + matches.bounds[2*k], offset + matches.bounds[2*k+1], painter); // 'Highlighter' takes two indexes and a painter as input
+					} catch (BadLocationException e) { // 'Highlighter' may throw an error
+						e.printStackTrace();
+					}
+				}
+				matchCount += matches.highlights.length;
+				lineMatches.set(matches.line, matches);
+			}
+			showCount(true);
+		}
+		
+		@Override
+		protected void done() {
+			if(worker != this) return;
+			worker = null;
+			showCount(false);
+		}
+	}
+	
+	class TextAreaListener implements DocumentListener { // Forgets the matches of the lines that are edited
+		
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			edited(e);
+		}
+		
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			edited(e);
+		}
+		
+		@Override
+		public void changedUpdate(DocumentEvent e) {} // Only attributes changed, not the text
+		
+		private void edited(DocumentEvent e) {
+			if(nfa == null) return;
+			Element root = e.getDocument().getDefaultRootElement();
+			DocumentEvent.ElementChange change = e.getChange(root);
+			if(change == null) { // The edit stayed within one line
+				forgetLine(root.getElementIndex(e.getOffset()));
+			} else { // Lines were split or joined: drop the removed ones, the added ones have to be searched
+				int index = change.getIndex();
+				for(int i=0; i<change.getChildrenRemoved().length; i++) {
+					forgetLine(index);
+					lineMatches.remove(index);
+				}
+				for(int i=0; i<change.getChildrenAdded().length; i++)
+					lineMatches.add(index, null);
+			}
+			scheduleSearch();
+		}
+	}
+	
+	class DocumentChange implements PropertyChangeListener { // Moves the document listener when the text area gets a new document
+		@Override
+		public void propertyChange(PropertyChangeEvent e) {
+			if(e.getOldValue() != null) ((Document) e.getOldValue()).removeDocumentListener(documentListener);
+			((Document) e.getNewValue()).addDocumentListener(documentListener);
+			searchAll();
 		}
 	}
 	
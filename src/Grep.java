@@ -0,0 +1,219 @@
+/*
+ * Grep.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class Grep {
+
+	/* The command-line mode of Main, which searches any number of files like grep:
+	 *
+	 *     java Main [-c] [-l] [-m N] <regular expression> <file or directory>...
+	 *
+	 *     -c    print the number of accepted lines of each file instead of the lines
+	 *     -l    print only the names of the files with an accepted line, reading each file only
+	 *           up to its first one
+	 *     -m N  stop reading a file after its N-th accepted line
+	 *
+	 * Directories are searched recursively. Files are read as UTF-8 and searched at the same time
+	 * by a pool of threads, one file per thread, but the results are printed in the order the
+	 * files were given, directories in sorted order, so the output is the same on every run.
+	 * Lines are prefixed with their file name when there is more than one file. Returns 0 if a
+	 * line was accepted, 1 if none was and 2 if there was an error, like grep. */
+
+	private static final int FILES_AHEAD = 4; // Files searched ahead of the one being printed, per thread
+
+	private boolean count;
+	private boolean filesWithMatches;
+	private int maxMatches = Integer.MAX_VALUE;
+	private NFA nfa;
+
+	private static class FileResult {
+		long matches; // Accepted lines, up to the limit
+		ArrayList<String> lines = new ArrayList<String>(); // Only kept when the lines are printed
+		String error;
+	}
+
+	public static int run(String[] args) {
+		PrintStream out;
+		try {
+			out = new PrintStream(new FileOutputStream(FileDescriptor.out), false, "UTF-8");
+		} catch (UnsupportedEncodingException e) { // Every JVM supports UTF-8
+			throw new RuntimeException(e);
+		}
+		try {
+			return new Grep().run(args, out);
+		} finally {
+			out.flush();
+		}
+	}
+
+	private int run(String[] args, PrintStream out) {
+		/* Options come before the pattern, "--" ends them */
+		int i = 0;
+		for(; i<args.length && args[i].startsWith("-") && args[i].length() > 1; i++) {
+			if(args[i].equals("--")) {
+				i++;
+				break;
+			} else if(args[i].equals("-c")) {
+				count = true;
+			} else if(args[i].equals("-l")) {
+				filesWithMatches = true;
+			} else if(args[i].equals("-m") && i + 1 < args.length) {
+				try {
+					maxMatches = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					return usage("invalid match count: " + args[i]);
+				}
+				if(maxMatches < 0) return usage("invalid match count: " + args[i]);
+			} else {
+				return usage("unknown option: " + args[i]);
+			}
+		}
+		if(args.length - i < 2) return usage(null);
+
+		String regex = args[i++];
+		try {
+			nfa = PatternCache.getShared().get(regex);
+		} catch (RuntimeException e) { // 'InfixToPostfixConverter' may throw an error while compiling
+			System.err.println("Invalid regular expression: " + regex);
+			return 2;
+		}
+		if(filesWithMatches) maxMatches = Math.min(maxMatches, 1); // The first accepted line is enough
+
+		ArrayList<Path> files = new ArrayList<Path>();
+		boolean prefix = args.length - i > 1; // Whether lines are prefixed with their file name
+		boolean error = false;
+		for(; i<args.length; i++) {
+			Path path = Paths.get(args[i]);
+			if(Files.isDirectory(path)) {
+				prefix = true;
+				try(Stream<Path> tree = Files.walk(path)) {
+					List<Path> found = tree.filter(Files::isRegularFile).map(Path::toString).sorted().map(Paths::get).collect(Collectors.toList());
+					files.addAll(found);
+				} catch (IOException e) {
+					System.err.println(args[i] + ": " + e.getMessage());
+					error = true;
+				}
+			} else {
+				files.add(path); // Missing files are reported when they are searched, in order
+			}
+		}
+
+		/* Search the files on a pool of threads, at most FILES_AHEAD per thread ahead of the file
+		 * being printed so the memory held by results stays bounded, and print them in order */
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "grep");
+			thread.setDaemon(true);
+			return thread;
+		});
+		boolean found = false;
+		try {
+			ArrayDeque<Future<FileResult>> pending = new ArrayDeque<Future<FileResult>>();
+			int next = 0;
+			for(Path file: files) {
+				while(next < files.size() && pending.size() < threads * FILES_AHEAD) {
+					final Path toSearch = files.get(next++);
+					pending.add(pool.submit(new Callable<FileResult>() {
+						public FileResult call() {
+							return search(toSearch);
+						}
+					}));
+				}
+
+				FileResult result = pending.remove().get();
+				if(result.error != null) {
+					out.flush();
+					System.err.println(file + ": " + result.error);
+					error = true;
+					continue;
+				}
+				if(result.matches > 0) found = true;
+				String name = prefix ? file + ":" : "";
+				if(filesWithMatches) {
+					if(result.matches > 0) out.println(file);
+				} else if(count) {
+					out.println(name + result.matches);
+				} else {
+					for(String line: result.lines)
+						out.println(name + line);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if(error) return 2;
+		return found ? 0 : 1;
+	}
+
+	private FileResult search(Path file) {
+		// Searches one file, on a thread of the pool, mapping it a window at a time like MappedLineSearch
+		FileResult result = new FileResult();
+		boolean keepLines = !count && !filesWithMatches;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Matcher matcher = nfa.localMatcher();
+			ArrayList<Integer> lineNumbers = new ArrayList<Integer>();
+			long size = channel.size();
+			long position = 0; // Start of the part of the file that has not been searched yet
+			while(position < size && result.matches < maxMatches) {
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MappedLineSearch.WINDOW_SIZE, size - position));
+				int end = MappedLineSearch.windowEnd(window, position + window.limit() == size);
+				if(end == 0) throw new IOException("line longer than " + MappedLineSearch.WINDOW_SIZE + " bytes");
+
+				lineNumbers.clear();
+				MappedLineSearch.scan(matcher, window, 0, end, lineNumbers, keepLines ? result.lines : null, (int) (maxMatches - result.matches));
+				result.matches += lineNumbers.size();
+				position += end;
+			}
+		} catch (NoSuchFileException e) {
+			result.error = "No such file or directory";
+		} catch (IOException e) {
+			result.error = e.getMessage();
+		}
+		if(!keepLines) result.lines = null;
+		return result;
+	}
+
+	private static int usage(String problem) {
+		if(problem != null) System.err.println(problem);
+		System.err.println("Usage: java Main [-c] [-l] [-m N] <regular expression> <file or directory>...");
+		return 2;
+	}
+
+}
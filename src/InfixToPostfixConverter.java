@@ -15,67 +15,168 @@ public class InfixToPostfixConverter {
 	private String regex;
 	private char c;
 	private int cc;
+	private int groupCount; // Capturing groups opened so far, numbered from 1 in the order of their '('
 
 	private StringBuffer postfix = new StringBuffer();
 
+	/* Characters with a meaning of their own in the postfix form, escaped with a backslash when they are literals */
+	private static final String POSTFIX_OPERATORS = "&|*+?{\\[.\u03B5^$(";
+
+	public static final int MAX_REPEAT = 1000; // Largest count allowed in {m,n}
+
+	/* Largest number of symbols the pattern may have once every repetition is written out as
+	 * the copies the automaton is built from, so (a{1000}){1000} is rejected here instead of
+	 * building two million states. Twice a union of 20000 five-letter words. */
+	public static final long MAX_EXPANDED_SIZE = 200000;
+
 	public String getPosfixExpression() {
 		return postfix.toString();
 	}
 
+	public int getGroupCount() {
+		return groupCount;
+	}
+
 	public InfixToPostfixConverter(String infixExpression) {
+		Object event = EngineMetrics.beginConvert();
+		long startTime = System.nanoTime();
+
 		regex = infixExpression + '\0';
 		c = regex.charAt(cc++);
-		E();
+		checkSize(E());
+
+		EngineMetrics.converted(event, infixExpression, postfix.length(), startTime);
 	}
 
-	private void E() {
-		T();
+	/* E, T, F and G return the number of symbols in what they read once its repetitions are
+	 * expanded, see MAX_EXPANDED_SIZE */
+
+	private long E() {
+		long size = T();
 		while (c == '|') {
 			c = regex.charAt(cc++);
-			T();
+			size += T();
 			postfix.append("|");
 		}
+		return size;
 	}
 
-	private void T() {
-		F();
+	private long T() {
+		long size = F();
 		while (c != '\0' && !(")|*+?").contains(""+c)) { /* '(' or LITERAL */
-			F();
+			size += F();
 			postfix.append("&");
 		}
+		return size;
 	}
 
-	private void F() {
-		G();
-		while (c != '\0' && ("*+?").contains(""+c)) {
+	private long F() {
+		long size = G();
+		while (c != '\0' && ("*+?{").contains(""+c)) {
+			if (c == '{') {
+				int copies = repetition();
+				if (copies == 0)
+					break; /* not a count, so the '{' is a literal */
+				size = checkSize(size * copies);
+				continue;
+			}
 			postfix.append(c);
 			c = regex.charAt(cc++);
 		}
+		return size;
 	}
 
-	private void G() {
+	private long checkSize(long size) {
+		if (size > MAX_EXPANDED_SIZE)
+			fatal("pattern too large once its repetitions are expanded!");
+		return size;
+	}
+
+	private int repetition() {
+		/* Reads a counted repetition {m}, {m,} or {m,n} and appends it in the form {m,n} or {m,}.
+		 * Returns how many copies of the repeated expression the automaton is built from, at
+		 * least 1, or 0 without reading anything if the '{' does not start one */
+		int i = cc;
+		int start = i;
+		while (Character.isDigit(regex.charAt(i)))
+			i++;
+		if (i == start)
+			return 0;
+		int min = count(start, i), max = min;
+		if (regex.charAt(i) == ',') {
+			start = ++i;
+			while (Character.isDigit(regex.charAt(i)))
+				i++;
+			max = (i == start) ? -1 : count(start, i); /* -1 for no upper bound */
+		}
+		if (regex.charAt(i) != '}')
+			return 0;
+
+		if (max >= 0 && max < min)
+			fatal("invalid repetition count!");
+		postfix.append("{" + min + "," + (max < 0 ? "" : "" + max) + "}");
+		cc = i + 1;
+		c = regex.charAt(cc++);
+		return Math.max(max < 0 ? min : max, 1);
+	}
+
+	private int count(int start, int end) { // The number written in regex[start..end-1]
+		if (end - start > 6 || Integer.parseInt(regex.substring(start, end)) > MAX_REPEAT)
+			fatal("repetition count too large!");
+		return Integer.parseInt(regex.substring(start, end));
+	}
+
+	private long G() {
 		if (c == '\0')
 			fatal("unexpected end of expression!");
 		if (c == '\\') { /* escape */
 			c = regex.charAt(cc++);
 			if (c == '\0')
 				fatal("escape at end of string");
+			if (CharClass.isShorthand(c)) {
+				postfix.append("[\\" + c + "]"); /* shorthand class, see CharClass */
+			} else {
+				if (POSTFIX_OPERATORS.contains(""+c))
+					postfix.append('\\'); /* keep it a literal in the postfix form too */
+				postfix.append(c);
+			}
+			c = regex.charAt(cc++);
+		} else if (c == '[') { /* character class */
+			int end = CharClass.findEnd(regex, cc-1);
+			if (end < 0)
+				fatal("unterminated character class!");
+			String bracketExpression = regex.substring(cc-1, end);
+			CharClass.parse(bracketExpression); /* fails here if it is malformed */
+			postfix.append(bracketExpression);
+			cc = end;
+			c = regex.charAt(cc++);
+		} else if (c == '.') { /* wildcard */
+			postfix.append('.');
+			c = regex.charAt(cc++);
+		} else if (c == '^' || c == '$') { /* anchor, matches the empty string at the start or end of the input */
 			postfix.append(c);
 			c = regex.charAt(cc++);
 		} else if (!("()|*&").contains(""+c)) { /* non-meta chacter */
 			if (c == '&')
 				postfix.append("&");
-			else
+			else {
+				if (c != '\u03B5' && POSTFIX_OPERATORS.contains(""+c))
+					postfix.append('\\'); /* like a '{' that does not start a repetition */
 				postfix.append(c);
+			}
 			c = regex.charAt(cc++);
-		} else if (c == '(') {
+		} else if (c == '(') { /* capturing group, marked (n) after its operand like a repetition */
+			int group = ++groupCount;
 			c = regex.charAt(cc++);
-			E();
+			long size = E();
 			if (c != ')')
 				fatal("mismatched parantheses!");
+			postfix.append("(" + group + ")");
 			c = regex.charAt(cc++);
+			return size;
 		} else
 			fatal("bogus expression!");
+		return 1;
 	}
 
 	private void fatal(String message) {
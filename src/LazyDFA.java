@@ -0,0 +1,273 @@
+/*
+ * LazyDFA.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+public class LazyDFA {
+
+	public static final int DEFAULT_MEMORY_BUDGET = 1 << 20; // Bytes of cached states and transitions
+
+	private static final int UNKNOWN = -1; // Transition that has not been computed yet
+	private static final int STATE_OVERHEAD = 64; // Rough cost in bytes of the objects behind one state
+
+	/* Flags of a DFA state. A state accepting at the end of the input may need a '$' to accept,
+	 * every accepting state also accepts at the end. No match can go on from a dead state,
+	 * which is reached once every thread of an anchored pattern has failed. */
+	private static final byte ACCEPTING = 1;
+	private static final byte ACCEPTING_AT_END = 2;
+	private static final byte DEAD = 4;
+
+	private final CompiledNFA nfa;
+	private final Alphabet alphabet;
+	private final boolean unanchored; // If true a match may start at any position (used by acceptsLine)
+	private final int memoryBudget;
+	private final int columns; // One column per character class
+
+	/* DFA state i stands for the set of NFA states sets.get(i). Its transition on a character
+	 * of class c is table[i * columns + c] */
+	private ArrayList<int[]> sets = new ArrayList<int[]>();
+	private HashMap<StateKey, Integer> index = new HashMap<StateKey, Integer>();
+	private byte[] flags = new byte[16];
+	private BitSet[] acceptTags = new BitSet[16]; // Patterns an accepting state matches, null for other states
+	private BitSet[] endTags = new BitSet[16]; // Patterns matched if the input ends in a state, null if there are none
+	private int[] table;
+	private int memoryUsed;
+	private int startState = UNKNOWN;
+	private int flushes;
+	private long pendingReads; // Characters read but not yet added to EngineMetrics, which is only updated once in a while
+
+	private StateSet currentStates;
+	private StateSet nextStates;
+	private StateSet endStates; // Scratch space for the states reached at the end of the input
+
+	public LazyDFA(CompiledNFA nfa, boolean unanchored, int memoryBudget) {
+		this.nfa = nfa;
+		this.unanchored = unanchored;
+		this.alphabet = nfa.getAlphabet();
+		this.columns = alphabet.getClassCount();
+		/* Always leave room for a handful of states, otherwise no transition could ever be cached */
+		this.memoryBudget = Math.max(memoryBudget, 8 * stateCost(nfa.getStateCount()));
+		this.table = new int[16 * columns];
+		this.currentStates = new StateSet(nfa.getStateCount());
+		this.nextStates = new StateSet(nfa.getStateCount());
+		this.endStates = new StateSet(nfa.getStateCount());
+	}
+
+	public boolean accepts(CharSequence s) {
+		// Checks whether the automaton accepts the whole of 's' (the LazyDFA must be anchored)
+		if(s.length() == 0) return nfa.acceptsEmpty();
+		int state = start();
+		for(int i=0; i<s.length(); i++) {
+			state = next(state, alphabet.classOf(s.charAt(i)));
+			if((flags[state] & DEAD) != 0) { // Nothing left that could accept
+				countRead(i + 1);
+				return false;
+			}
+		}
+		countRead(s.length());
+		return (flags[state] & ACCEPTING_AT_END) != 0;
+	}
+
+	public boolean acceptsLine(CharSequence line) {
+		/* Checks whether the automaton accepts any part of 'line' (the LazyDFA must be unanchored).
+		 * Stops at the first accepting state, or at a dead state once an anchored pattern has
+		 * failed. */
+		return acceptsLine(line, 0);
+	}
+
+	public boolean acceptsLine(CharSequence line, int from) {
+		// Starts reading at 'from', see FirstCharacters. Transitions not cached yet are computed as they are read
+		if(line.length() == 0) return nfa.acceptsEmpty();
+		int state = start();
+		if((flags[state] & ACCEPTING) != 0) return true;
+		for(int i=from; i<line.length(); i++) {
+			state = next(state, alphabet.classOf(line.charAt(i)));
+			if((flags[state] & (ACCEPTING | DEAD)) != 0) {
+				countRead(i + 1 - from);
+				return (flags[state] & ACCEPTING) != 0;
+			}
+		}
+		countRead(line.length() - from);
+		return (flags[state] & ACCEPTING_AT_END) != 0;
+	}
+
+	public boolean acceptsLine(ByteBuffer bytes, int from, int to) {
+		/* Same as acceptsLine(CharSequence), for the bytes from..to-1 of 'bytes'. The automaton
+		 * must have been built from CompiledNFA.toUTF8() */
+		if(from == to) return nfa.acceptsEmpty();
+		int state = start();
+		if((flags[state] & ACCEPTING) != 0) return true;
+		for(int i=from; i<to; i++) {
+			state = next(state, alphabet.classOfByte(bytes.get(i)));
+			if((flags[state] & (ACCEPTING | DEAD)) != 0) {
+				countRead(i + 1 - from);
+				return (flags[state] & ACCEPTING) != 0;
+			}
+		}
+		countRead(to - from);
+		return (flags[state] & ACCEPTING_AT_END) != 0;
+	}
+
+	public void matchingTags(CharSequence line, BitSet matched) {
+		/* Adds the patterns that match some part of 'line' to 'matched', for an unanchored LazyDFA
+		 * built from a PatternSet. Unlike acceptsLine the whole line is read, since a pattern that
+		 * has not matched yet may still match further on. */
+		if(line.length() == 0) {
+			matched.or(nfa.getEmptyTags());
+			return;
+		}
+		int state = start();
+		if((flags[state] & ACCEPTING) != 0) matched.or(acceptTags[state]);
+		for(int i=0; i<line.length(); i++) {
+			state = next(state, alphabet.classOf(line.charAt(i)));
+			if((flags[state] & ACCEPTING) != 0) matched.or(acceptTags[state]);
+			if((flags[state] & DEAD) != 0) break;
+		}
+		if(endTags[state] != null) matched.or(endTags[state]);
+		countRead(line.length());
+	}
+
+	public int getFlushCount() { // Number of times the cache ran out of memory and was cleared
+		return flushes;
+	}
+
+	public int getCachedStateCount() {
+		return sets.size();
+	}
+
+	/* start, next and the flags run the DFA one character at a time, see StreamMatcher. A state
+	 * number stays valid until the next call to start or next, which may flush the cache. */
+	int start() {
+		if(startState == UNKNOWN) {
+			currentStates.clear();
+			EngineMetrics.closureSearches.add(nfa.addStartClosure(currentStates));
+			startState = intern(currentStates);
+		}
+		return startState;
+	}
+
+	int next(int state, int cls) {
+		int target = table[state * columns + cls];
+		if(target != UNKNOWN) return target; // Cached
+		EngineMetrics.dfaTransitionsComputed.increment();
+		EngineMetrics.dfaCharactersRead.add(pendingReads); // So the hit rate stays close to the truth
+		pendingReads = 0;
+
+		/* Compute the set of NFA states reached from this DFA state */
+		int[] set = sets.get(state);
+		currentStates.clear();
+		for(int s: set)
+			currentStates.add(s);
+		nextStates.clear();
+		int searches = nfa.stepClass(currentStates, cls, nextStates);
+		if(unanchored) searches += nfa.addClosure(nextStates, 0);
+		EngineMetrics.closureSearches.add(searches); // Once per transition computed, not per character
+
+		int generation = flushes;
+		target = intern(nextStates);
+		if(generation == flushes) table[state * columns + cls] = target; // The source state survived, remember the transition
+		return target;
+	}
+
+	boolean isAccepting(int state) {
+		return (flags[state] & ACCEPTING) != 0;
+	}
+
+	boolean isAcceptingAtEnd(int state) { // Whether the state accepts if the input ends in it
+		return (flags[state] & ACCEPTING_AT_END) != 0;
+	}
+
+	boolean isDead(int state) {
+		return (flags[state] & DEAD) != 0;
+	}
+
+	boolean acceptsEmpty() {
+		return nfa.acceptsEmpty();
+	}
+
+	Alphabet getAlphabet() {
+		return alphabet;
+	}
+
+	private int intern(StateSet states) {
+		// Returns the DFA state for the given set of NFA states, creating it if necessary
+		StateKey key = new StateKey(states);
+		int[] set = key.getStates();
+		Integer existing = index.get(key);
+		if(existing != null) return existing;
+
+		int cost = stateCost(set.length);
+		if(memoryUsed + cost > memoryBudget) flush();
+
+		int id = sets.size();
+		sets.add(set);
+		index.put(key, id);
+		if(id == flags.length) {
+			flags = Arrays.copyOf(flags, 2 * id);
+			acceptTags = Arrays.copyOf(acceptTags, 2 * id);
+			endTags = Arrays.copyOf(endTags, 2 * id);
+		}
+		if((id + 1) * columns > table.length) table = Arrays.copyOf(table, 2 * table.length);
+		Arrays.fill(table, id * columns, (id + 1) * columns, UNKNOWN);
+		flags[id] = 0;
+		acceptTags[id] = null;
+		if(nfa.anyAccepting(states)) {
+			flags[id] = ACCEPTING;
+			acceptTags[id] = new BitSet();
+			nfa.addAcceptTags(states, acceptTags[id]);
+		}
+		endTags[id] = acceptTags[id];
+		if(nfa.hasAnchors()) { // Follow the '$' assertions that hold at the end of the input
+			endStates.clear();
+			for(int i=0; i<states.size(); i++)
+				endStates.add(states.get(i));
+			nfa.addEndClosure(endStates, false);
+			if(nfa.anyAccepting(endStates)) {
+				endTags[id] = new BitSet();
+				nfa.addAcceptTags(endStates, endTags[id]);
+			}
+		}
+		if(endTags[id] != null) flags[id] |= ACCEPTING_AT_END;
+		if(nfa.isDead(states)) flags[id] |= DEAD;
+		memoryUsed += cost;
+		EngineMetrics.dfaStatesBuilt.increment();
+		EngineMetrics.dfaStateSetSizes.add(set.length);
+		return id;
+	}
+
+	private void countRead(int characters) {
+		pendingReads += characters;
+		if(pendingReads >= 1 << 16) {
+			EngineMetrics.dfaCharactersRead.add(pendingReads);
+			pendingReads = 0;
+		}
+	}
+
+	private int stateCost(int setSize) {
+		return STATE_OVERHEAD + 4 * (columns + setSize);
+	}
+
+	private void flush() {
+		/* Forget every state, matching carries on from the state that is being added */
+		sets.clear();
+		index.clear();
+		memoryUsed = 0;
+		startState = UNKNOWN;
+		flushes++;
+		EngineMetrics.dfaCacheFlushes.increment();
+	}
+
+}
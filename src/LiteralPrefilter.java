@@ -0,0 +1,188 @@
+/*
+ * LiteralPrefilter.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class LiteralPrefilter {
+
+	private static final int MAX_LITERALS = 4; // Checking more literals rarely rejects more lines
+
+	private final String[] literals; // Every match contains all of these, longest first
+	private final byte[][] encodedLiterals; // The same literals in UTF-8
+	private final int[][] skipTables; // Boyer-Moore-Horspool shift for every byte value, per literal
+
+	private LiteralPrefilter(List<String> literals) {
+		this.literals = literals.toArray(new String[0]);
+		encodedLiterals = new byte[this.literals.length][];
+		skipTables = new int[this.literals.length][];
+		for(int i=0; i<this.literals.length; i++) {
+			byte[] pattern = this.literals[i].getBytes(StandardCharsets.UTF_8);
+			int[] skip = new int[256];
+			Arrays.fill(skip, pattern.length);
+			for(int k=0; k<pattern.length-1; k++)
+				skip[pattern[k] & 0xFF] = pattern.length - 1 - k;
+			encodedLiterals[i] = pattern;
+			skipTables[i] = skip;
+		}
+	}
+
+	public static LiteralPrefilter fromPostfix(String postfixExpression) {
+		// Returns a prefilter for the pattern, or null if its matches need not contain any literal
+		return fromTree(RegexNode.fromPostfix(postfixExpression));
+	}
+
+	public static LiteralPrefilter fromTree(RegexNode root) {
+		Factors factors = analyse(root);
+
+		/* Candidates are the required factors and the prefix and suffix of every match */
+		HashSet<String> candidates = new HashSet<String>(factors.required);
+		candidates.add(factors.prefix);
+		candidates.add(factors.suffix);
+		if(factors.exact != null) candidates.add(factors.exact);
+
+		/* Longest first, dropping literals that are part of a longer one anyway */
+		ArrayList<String> sorted = new ArrayList<String>(candidates);
+		sorted.sort((a, b) -> b.length() - a.length());
+		ArrayList<String> literals = new ArrayList<String>();
+		for(String candidate: sorted) {
+			if(candidate.isEmpty() || literals.size() == MAX_LITERALS) break;
+			boolean redundant = false;
+			for(String literal: literals)
+				if(literal.contains(candidate)) redundant = true;
+			if(!redundant) literals.add(candidate);
+		}
+		return literals.isEmpty() ? null : new LiteralPrefilter(literals);
+	}
+
+	public String[] getLiterals() {
+		return literals.clone();
+	}
+
+	public boolean mayMatch(String line) {
+		// Returns false if 'line' cannot contain a match because one of the literals is missing
+		for(String literal: literals)
+			if(line.indexOf(literal) < 0) return false;
+		return true;
+	}
+
+	public boolean mayMatch(ByteBuffer bytes, int from, int to) {
+		// Same as mayMatch(String), for the UTF-8 bytes from..to-1 of 'bytes'
+		for(int i=0; i<literals.length; i++)
+			if(indexOf(bytes, from, to, i) < 0) return false;
+		return true;
+	}
+
+	private int indexOf(ByteBuffer bytes, int from, int to, int literal) {
+		/* Boyer-Moore-Horspool search: compare the pattern from its end, and on a mismatch
+		 * shift it by the distance from the last occurrence of the byte under its end */
+		byte[] pattern = encodedLiterals[literal];
+		int[] skip = skipTables[literal];
+		int last = pattern.length - 1;
+		int position = from;
+		while(position + last < to) {
+			int k = last;
+			while(k >= 0 && bytes.get(position + k) == pattern[k]) k--;
+			if(k < 0) return position;
+			position += skip[bytes.get(position + last) & 0xFF];
+		}
+		return -1;
+	}
+
+	private static class Factors { // What is known about every string a subexpression matches
+
+		String exact; // The only string matched, or null if there are several
+		String prefix = ""; // Every match starts with this
+		String suffix = ""; // Every match ends with this
+		HashSet<String> required = new HashSet<String>(); // Every match contains all of these
+	}
+
+	private static Factors analyse(RegexNode node) {
+		Factors factors = new Factors();
+		switch(node.getKind()) {
+		case EMPTY:
+		case START: // Anchors do not read any character
+		case END:
+			factors.exact = "";
+			break;
+		case SYMBOL: // Nothing is known about a class of several characters
+			if(node.isLiteral()) factors.exact = factors.prefix = factors.suffix = "" + node.getSymbol();
+			break;
+		case STAR: // May match nothing at all
+			break;
+		case REPEAT:
+			if(node.getMin() == 0) break; // May match nothing at all
+			/* Every match starts with the child matched min times, which starts with the child
+			 * matched once or twice, and ends with it too */
+			Factors once = analyse(node.getChildren().get(0));
+			factors = (node.getMin() == 1) ? once : concatenate(once, once);
+			if(node.getMax() != node.getMin() || node.getMin() > 2) factors.exact = null;
+			break;
+		case GROUP:
+			factors = analyse(node.getChildren().get(0));
+			break;
+		case CONCAT:
+			factors = analyse(node.getChildren().get(0));
+			for(int i=1; i<node.getChildren().size(); i++)
+				factors = concatenate(factors, analyse(node.getChildren().get(i)));
+			break;
+		case UNION:
+			factors = analyse(node.getChildren().get(0));
+			for(int i=1; i<node.getChildren().size(); i++)
+				factors = union(factors, analyse(node.getChildren().get(i)));
+			break;
+		}
+		return factors;
+	}
+
+	private static Factors concatenate(Factors a, Factors b) {
+		Factors factors = new Factors();
+		factors.exact = (a.exact != null && b.exact != null) ? a.exact + b.exact : null;
+		factors.prefix = (a.exact != null) ? a.exact + b.prefix : a.prefix;
+		factors.suffix = (b.exact != null) ? a.suffix + b.exact : b.suffix;
+		factors.required.addAll(a.required);
+		factors.required.addAll(b.required);
+		factors.required.add(a.suffix + b.prefix); // Where the two parts meet
+		return factors;
+	}
+
+	private static Factors union(Factors a, Factors b) {
+		Factors factors = new Factors();
+		factors.exact = (a.exact != null && a.exact.equals(b.exact)) ? a.exact : null;
+		int p = 0;
+		while(p < a.prefix.length() && p < b.prefix.length() && a.prefix.charAt(p) == b.prefix.charAt(p)) p++;
+		factors.prefix = a.prefix.substring(0, p);
+		int s = 0;
+		while(s < a.suffix.length() && s < b.suffix.length()
+				&& a.suffix.charAt(a.suffix.length() - 1 - s) == b.suffix.charAt(b.suffix.length() - 1 - s)) s++;
+		factors.suffix = a.suffix.substring(a.suffix.length() - s);
+
+		/* A literal is only required if both alternatives require it */
+		HashSet<String> known = known(b);
+		for(String literal: known(a))
+			if(known.contains(literal)) factors.required.add(literal);
+		return factors;
+	}
+
+	private static HashSet<String> known(Factors factors) { // Every literal known to be in every match
+		HashSet<String> known = new HashSet<String>(factors.required);
+		known.add(factors.prefix);
+		known.add(factors.suffix);
+		if(factors.exact != null) known.add(factors.exact);
+		return known;
+	}
+
+}
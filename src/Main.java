@@ -16,10 +16,16 @@ public class Main {
 
 	public static void main(String[] args) {
 		
+		if(args.length > 0) { // Search files from the command line and exit, see Grep
+			System.exit(Grep.run(args));
+		}
+		
 		final boolean GUI = true; // Set to true to display the GUI.
 		
 		if(GUI) new GUI().displayGUI();
 		
+		EngineMetrics.register(); // So the engine can be watched with JConsole
+		
 		String file;
 		Scanner scanner = new Scanner(System.in);
 		System.out.println("Enter the file to search (without the '.txt' extension): ");
@@ -32,7 +38,7 @@ public class Main {
 		InfixToPostfixConverter ifpf = new InfixToPostfixConverter(regex); // convert regular expression to postfix form
 		System.out.println("Regex in postfix form:\n---------------------\n" + ifpf.getPosfixExpression() + '\n');
 		
-		NFA nfa = NFA.getNFAfromPostfix(ifpf.getPosfixExpression()); // build NFA from postfix expression and assign it to NFA object
+		NFA nfa = PatternCache.getShared().get(regex); // build NFA from postfix expression (reused if it was compiled before) and assign it to NFA object
 		System.out.println("The following NFA was built:\n---------------------------\n" + nfa);
 		
 		System.out.println("NFA simulation results: \n-----------------------");
@@ -40,7 +46,7 @@ public class Main {
 		nfa.acceptedLines(file); // This function adds the '.txt' extension
 		long endTime = System.nanoTime();
 
-		System.out.println("\nNFA simulation took: " + (endTime - startTime)/10e6 + " ms");
+		System.out.println("\nNFA simulation took: " + (endTime - startTime)/1e6 + " ms");
 		
 		scanner.close();
 
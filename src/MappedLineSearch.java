@@ -0,0 +1,170 @@
+/*
+ * MappedLineSearch.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+public class MappedLineSearch {
+
+	static final int WINDOW_SIZE = 64 << 20; // The file is mapped this many bytes at a time, also by Grep
+
+	// Takes the file as input and prints the accepted lines like NFA.acceptedLines, reading the file as UTF-8
+	public static void acceptedLines(NFA nfa, String fileName) {
+
+		try {
+			FileChannel channel = FileChannel.open(Paths.get(fileName + ".txt"), StandardOpenOption.READ);
+			try {
+				Matcher matcher = nfa.localMatcher();
+				ArrayList<Integer> lineNumbers = new ArrayList<Integer>();
+				ArrayList<String> lines = new ArrayList<String>();
+				long size = channel.size();
+				long position = 0; // Start of the part of the file that has not been searched yet
+				long lineNumber = 0; // Number of lines searched so far
+				boolean found = false; // If any line is accepted this becomes true
+
+				while(position < size) {
+					/* Map the next window, and only search the complete lines in it */
+					MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+					int end = windowEnd(window, position + window.limit() == size);
+					if(end == 0) throw new IOException("Line longer than " + WINDOW_SIZE + " bytes in " + fileName + ".txt");
+
+					lineNumbers.clear();
+					lines.clear();
+					int lineCount = scan(matcher, window, 0, end, lineNumbers, lines);
+					for(int i=0; i<lines.size(); i++) {
+						System.out.println("ACCEPTED LINE (" + (lineNumber + lineNumbers.get(i)) + ") : " + lines.get(i));
+						found = true;
+					}
+					lineNumber += lineCount;
+					position += end;
+				}
+
+				if(!found) {
+					System.out.println("No matches found.");
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (NoSuchFileException e) { // Inform the user if the file is not found
+			System.out.println(fileName + ".txt could not be found.");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static int windowEnd(ByteBuffer window, boolean lastWindow) {
+		/* Where a window mapped from a file must be cut so it only holds complete lines: after
+		 * its last line break, with lines ending like in scan. A '\r' in the last byte is not a
+		 * place to cut, since it may be the start of a "\r\n" that the next window finishes. The
+		 * last window of the file is searched whole. Returns 0 if there is no place to cut. */
+		int end = window.limit();
+		if(lastWindow) return end;
+		for(int i=end-1; i>=0; i--) {
+			byte b = window.get(i);
+			if(b == '\n' || (b == '\r' && i + 1 < end)) return i + 1;
+		}
+		return 0;
+	}
+
+	static int scan(Matcher matcher, ByteBuffer bytes, int from, int to, ArrayList<Integer> lineNumbers, ArrayList<String> lines) {
+		/* Searches the lines in bytes[from..to-1] and adds the accepted ones, with their line number
+		 * counted from the first line in the range, to the two lists. Lines end at "\n", "\r\n" or
+		 * "\r" like the lines returned by Scanner. Lines missing a required literal are skipped
+		 * without running the automaton, and only accepted lines are decoded into Strings.
+		 * Returns the number of lines in the range. */
+		return scan(matcher, bytes, from, to, lineNumbers, lines, Integer.MAX_VALUE);
+	}
+
+	static int scan(Matcher matcher, ByteBuffer bytes, int from, int to, ArrayList<Integer> lineNumbers, ArrayList<String> lines, int limit) {
+		/* Same as scan, but stops as soon as 'lineNumbers' holds 'limit' lines and returns the number
+		 * of lines read until then. If 'lines' is null the accepted lines are not decoded. */
+		int lineCount = 0;
+		int lineStart = from;
+		while(lineStart < to && lineNumbers.size() < limit) {
+			int lineEnd = lineStart;
+			while(lineEnd < to) {
+				byte b = bytes.get(lineEnd);
+				if(b == '\n' || b == '\r') break;
+				lineEnd++;
+			}
+
+			if(matcher.acceptsLine(bytes, lineStart, lineEnd)) {
+				lineNumbers.add(lineCount);
+				if(lines != null) {
+					byte[] line = new byte[lineEnd - lineStart];
+					ByteBuffer slice = bytes.duplicate();
+					slice.position(lineStart);
+					slice.get(line);
+					lines.add(new String(line, StandardCharsets.UTF_8));
+				}
+			}
+			lineCount++;
+
+			if(lineEnd + 1 < to && bytes.get(lineEnd) == '\r' && bytes.get(lineEnd + 1) == '\n') lineEnd++;
+			lineStart = lineEnd + 1;
+		}
+		return lineCount;
+	}
+
+	public static void test() throws IOException { // Method to test the MappedLineSearch class
+		/* The mapped and parallel searches must print the same lines as the Scanner, which reads
+		 * the file in the default charset, so this needs it to be UTF-8 (the default from Java 18
+		 * on, or -Dfile.encoding=UTF-8). The lines hold supplementary characters, which are two
+		 * characters each on the Scanner path and four bytes each on the others. */
+		if(!Charset.defaultCharset().equals(StandardCharsets.UTF_8)) {
+			System.out.println("Skipped, the default charset is " + Charset.defaultCharset() + " and not UTF-8");
+			return;
+		}
+		String smile = new String(Character.toChars(0x1F600)), last = new String(Character.toChars(0x10FFFF));
+		String text = "plain\n" + smile + "\r\na" + smile + "b\rx" + last + "\n" + smile + "b\n\u00E9\u4E2D" + smile + "\n" + last + smile + last + "\nab\n";
+		String[] patterns = {".", "[^a]", "\\W", "a.b", "a..b", ".b", "^..$", "x.$", "x..$", "^(\\W\\W)*$", "\\w+", "b|\u4E2D.."};
+
+		File file = File.createTempFile("MappedLineSearch", ".txt");
+		try {
+			Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+			String fileName = file.getPath().substring(0, file.getPath().length() - ".txt".length());
+			PrintStream out = System.out;
+			for(String pattern: patterns) {
+				NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression());
+				ByteArrayOutputStream scanner = new ByteArrayOutputStream(), mapped = new ByteArrayOutputStream(), parallel = new ByteArrayOutputStream();
+				try {
+					System.setOut(new PrintStream(scanner, true, "UTF-8"));
+					nfa.acceptedLines(fileName);
+					System.setOut(new PrintStream(mapped, true, "UTF-8"));
+					nfa.acceptedLinesMapped(fileName);
+					System.setOut(new PrintStream(parallel, true, "UTF-8"));
+					nfa.acceptedLines(fileName, true);
+				} finally {
+					System.setOut(out);
+				}
+				if(!mapped.toString("UTF-8").equals(scanner.toString("UTF-8")) || !parallel.toString("UTF-8").equals(scanner.toString("UTF-8")))
+					throw new RuntimeException("The mapped or parallel search of " + pattern + " did not print the lines the Scanner did:\n" + scanner.toString("UTF-8") + "but\n" + mapped.toString("UTF-8") + "and\n" + parallel.toString("UTF-8"));
+			}
+		} finally {
+			file.delete();
+		}
+		System.out.println("All tests passed!");
+	}
+
+}
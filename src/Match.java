@@ -0,0 +1,39 @@
+/*
+ * Match.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+public class Match {
+
+	private int start; // Index of the first matched character
+	private int end; // Index after the last matched character
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public Match(int start, int end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	public boolean isEmpty() {
+		return start == end;
+	}
+
+	public String toString() {
+		return "[" + start + ", " + end + ")";
+	}
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Matcher.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.nio.ByteBuffer;
+
+public class Matcher {
+
+	/* A Matcher holds everything that changes while matching an NFA: the caches of the lazily
+	 * built DFAs and the state sets of the NFA simulation. They are allocated once and reused by
+	 * every call, so a warm Matcher does not allocate (apart from the Match objects returned by
+	 * find, findGroups writes into an array of the caller). A Matcher must only be used by one
+	 * thread at a time; the NFA, its compiled forms and its minimal DFAs are immutable and
+	 * shared by all Matchers. */
+
+	private final NFA nfa;
+	private final CompiledNFA program;
+	private final LiteralPrefilter prefilter;
+	private final FirstCharacters firstCharacters;
+	private final BitParallelNFA bitParallel;
+	private final int cacheBudget;
+
+	/* Built by NFA.compileDFA, null if it was not called or the DFA was too large */
+	private final DFA wholeStringDFA;
+	private final DFA lineDFA;
+	private final DFA utf8LineDFA;
+
+	/* Used when there is neither a minimal DFA nor a bit-parallel automaton, created the first
+	 * time they are needed */
+	private LazyDFA lazyWholeStringDFA;
+	private LazyDFA lazyLineDFA;
+	private LazyDFA lazyUTF8LineDFA;
+	private CompiledNFA utf8Program;
+	private FirstCharacters firstBytes; // First characters of utf8Program
+
+	/* Scratch space for find */
+	private StateSet currentStates;
+	private StateSet nextStates;
+	private int[] currentStarts; // Position at which the thread in each state started
+	private int[] nextStarts;
+
+	/* Scratch space for findGroups: the thread lists of the Pike VM, the slots of every thread
+	 * in them, the slots of the thread being added and the stack of CaptureProgram.addThread */
+	private CaptureProgram captures;
+	private StateSet threads;
+	private StateSet nextThreads;
+	private int[] threadSlots;
+	private int[] nextThreadSlots;
+	private int[] slots;
+	private int[] captureStack;
+
+	/* Lines counted for EngineMetrics but not added to it yet. Shared counters are only updated
+	 * once every METRICS_BATCH lines, updating them for every line slows short lines down. */
+	private static final int METRICS_BATCH = 1024;
+	private int pendingLines;
+	private long pendingCharacters;
+	private long pendingClosureSearches; // Published by find once per call, not once per character
+
+	Matcher(NFA nfa, int cacheBudget) {
+		this.nfa = nfa;
+		this.program = nfa.compile();
+		this.prefilter = nfa.getPrefilter();
+		this.firstCharacters = program.getFirstCharacters();
+		this.bitParallel = nfa.getBitParallel();
+		this.cacheBudget = cacheBudget;
+		this.wholeStringDFA = nfa.getMinimalWholeStringDFA();
+		this.lineDFA = nfa.getMinimalLineDFA();
+		this.utf8LineDFA = nfa.getMinimalUTF8LineDFA();
+	}
+
+	public boolean accepts(CharSequence s) {
+		// Checks whether the automaton accepts the whole of 's'
+		if(wholeStringDFA != null) return wholeStringDFA.accepts(s);
+		if(bitParallel != null) return bitParallel.accepts(s);
+		if(lazyWholeStringDFA == null) lazyWholeStringDFA = new LazyDFA(program, false, cacheBudget);
+		return lazyWholeStringDFA.accepts(s);
+	}
+
+	public boolean acceptsLine(CharSequence line) {
+		/* Checks whether the automaton accepts any part of 'line'. Lines missing a literal that
+		 * every match contains are rejected without running the automaton, and the automaton
+		 * starts at the first character a match can start with. */
+		countLine(line.length());
+		if(prefilter != null && !prefilter.mayMatch(line.toString())) return false;
+		int from = 0;
+		if(firstCharacters != null) {
+			from = firstCharacters.indexIn(line, 0);
+			if(from < 0) return false;
+		}
+		if(lineDFA != null) return lineDFA.acceptsLine(line, from);
+		if(bitParallel != null) return bitParallel.acceptsLine(line, from);
+		if(lazyLineDFA == null) lazyLineDFA = new LazyDFA(program, true, cacheBudget);
+		return lazyLineDFA.acceptsLine(line, from);
+	}
+
+	public boolean acceptsLine(ByteBuffer bytes, int from, int to) {
+		// Same as acceptsLine(CharSequence), for a line of UTF-8 bytes from..to-1 of 'bytes'
+		countLine(to - from);
+		if(prefilter != null && !prefilter.mayMatch(bytes, from, to)) return false;
+		if(utf8Program == null) {
+			utf8Program = nfa.compileUTF8();
+			firstBytes = utf8Program.getFirstCharacters();
+		}
+		if(firstBytes != null && from < to) {
+			from = firstBytes.indexIn(bytes, from, to);
+			if(from < 0) return false;
+		}
+		if(utf8LineDFA != null) return utf8LineDFA.acceptsLine(bytes, from, to);
+		if(lazyUTF8LineDFA == null) lazyUTF8LineDFA = new LazyDFA(utf8Program, true, cacheBudget);
+		return lazyUTF8LineDFA.acceptsLine(bytes, from, to);
+	}
+
+	private void countLine(int length) {
+		pendingCharacters += length;
+		if(++pendingLines == METRICS_BATCH) {
+			EngineMetrics.linesScanned.add(pendingLines);
+			EngineMetrics.charactersScanned.add(pendingCharacters);
+			pendingLines = 0;
+			pendingCharacters = 0;
+		}
+	}
+
+	public Match find(CharSequence s, int from) {
+		/* Finds the leftmost-longest match in 's' that starts at or after 'from', or returns
+		 * null if there is none. Every thread of the simulation remembers where it started, and
+		 * a state reached by two threads keeps the one that started first. States are kept in
+		 * order of their starting position, so the first accepting state found belongs to the
+		 * leftmost match. Once a match is found no new threads are started, and the search
+		 * carries on only while a thread that started at the same position or earlier survives.
+		 * '^' only holds at position 0 of 's' and '$' at its end, so a pattern anchored at the
+		 * start gives up as soon as its threads from position 0 have all failed. */
+
+		if(currentStates == null) {
+			currentStates = new StateSet(program.getStateCount());
+			nextStates = new StateSet(program.getStateCount());
+			currentStarts = new int[program.getStateCount()];
+			nextStarts = new int[program.getStateCount()];
+		}
+
+		int matchStart = -1, matchEnd = -1;
+		currentStates.clear();
+
+		for(int i=from; ; i++) {
+			if(matchStart < 0) { // Start a new thread at this position
+				int before = currentStates.size();
+				if(i == 0) pendingClosureSearches += program.addStartClosure(currentStates);
+				else pendingClosureSearches += program.addClosure(currentStates, 0);
+				for(int k=before; k<currentStates.size(); k++)
+					currentStarts[currentStates.get(k)] = i;
+			}
+
+			if(i == s.length() && program.hasAnchors()) { // Follow the '$' assertions, which hold here
+				nextStates.clear();
+				program.endStep(currentStates, currentStarts, nextStates, nextStarts, i == 0);
+				StateSet tmp = currentStates; currentStates = nextStates; nextStates = tmp;
+				int[] tmpStarts = currentStarts; currentStarts = nextStarts; nextStarts = tmpStarts;
+			}
+
+			for(int k=0; k<currentStates.size(); k++) {
+				int state = currentStates.get(k);
+				if(!program.isAccepting(state)) continue;
+				int start = currentStarts[state];
+				if(matchStart < 0 || start < matchStart || (start == matchStart && i > matchEnd)) {
+					matchStart = start;
+					matchEnd = i;
+				}
+				break; // Later states started at the same position or after it
+			}
+
+			if(i == s.length()) break;
+
+			/* Advance every thread that can still produce the leftmost match */
+			nextStates.clear();
+			pendingClosureSearches += program.step(currentStates, currentStarts, s.charAt(i), nextStates, nextStarts, matchStart >= 0 ? matchStart : Integer.MAX_VALUE);
+			StateSet tmp = currentStates; currentStates = nextStates; nextStates = tmp;
+			int[] tmpStarts = currentStarts; currentStarts = nextStarts; nextStarts = tmpStarts;
+
+			if(currentStates.isEmpty() && (matchStart >= 0 || program.isAnchoredAtStart())) break; // No thread can extend the match or start one any more
+		}
+
+		if(pendingClosureSearches > 0) {
+			EngineMetrics.closureSearches.add(pendingClosureSearches);
+			pendingClosureSearches = 0;
+		}
+		return matchStart < 0 ? null : new Match(matchStart, matchEnd);
+	}
+
+	public boolean findGroups(CharSequence s, int from, int[] groups) {
+		/* Finds the first match in 's' that starts at or after 'from' and writes where each
+		 * group starts and ends to groups[2k] and groups[2k+1], -1 for a group that did not take
+		 * part, with the whole match as group 0. Returns false if there is no match. Of the
+		 * matches that start leftmost, the one found is the one java.util.regex would find,
+		 * which is not always the longest one find returns, and so are its groups, apart from
+		 * the differences in CaptureProgram. This is a Pike VM:
+		 * every thread carries its own slots, and a state reached by two threads keeps the
+		 * preferred one, so the time is linear in the length of 's' like find. Nothing is
+		 * allocated after the first call. */
+
+		if(captures == null) {
+			captures = nfa.compileCaptures();
+			threads = new StateSet(captures.getStateCount());
+			nextThreads = new StateSet(captures.getStateCount());
+			threadSlots = new int[captures.getStateCount() * captures.getSlotCount()];
+			nextThreadSlots = new int[captures.getStateCount() * captures.getSlotCount()];
+			slots = new int[captures.getSlotCount()];
+			captureStack = new int[captures.getStackSize()];
+		}
+		if(groups.length < captures.getSlotCount()) throw new RuntimeException("The pattern needs " + captures.getSlotCount() + " slots for its groups");
+
+		FirstCharacters firstCharacters = program.getFirstCharacters();
+		boolean found = false;
+		threads.clear();
+
+		for(int i=from; ; i++) {
+			if(!found && (i == 0 || !program.isAnchoredAtStart())) { // Start a new thread at this position, preferring the others
+				if(threads.isEmpty() && firstCharacters != null) { // Skip to where a match can start
+					i = firstCharacters.indexIn(s, i);
+					if(i < 0) break;
+				}
+				for(int k=0; k<slots.length; k++)
+					slots[k] = -1;
+				captures.addThread(threads, threadSlots, captures.getStartState(), slots, i, i == s.length(), captureStack);
+			}
+			if(threads.isEmpty()) break; // No thread can extend the match or start one any more
+
+			nextThreads.clear();
+			if(captures.step(threads, threadSlots, s, i, nextThreads, nextThreadSlots, slots, captureStack)) {
+				found = true;
+				System.arraycopy(threadSlots, captures.getMatchState() * captures.getSlotCount(), groups, 0, captures.getSlotCount());
+			}
+			StateSet tmp = threads; threads = nextThreads; nextThreads = tmp;
+			int[] tmpSlots = threadSlots; threadSlots = nextThreadSlots; nextThreadSlots = tmpSlots;
+
+			if(i == s.length()) break;
+		}
+
+		return found;
+	}
+
+	public static void test() { // Method to test the Matcher class
+		/* A pattern anchored with '^' can only match at the start of a line, so once every thread
+		 * started there has failed the rest of the line must not be read, by the lazy DFA nor by
+		 * find and findGroups. The line is read through a CharSequence that counts the characters
+		 * read. */
+		StringBuilder line = new StringBuilder("bbzab");
+		for(int i=0; i<100000; i++)
+			line.append('a');
+		String[] patterns = {"^[a-x]z", "^ab|^b{3}", "^(a|b)*c", "^b+$"};
+		for(String pattern: patterns) {
+			NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression());
+			if(!nfa.compile().isAnchoredAtStart()) throw new RuntimeException(pattern + " is not seen as anchored at the start");
+			Matcher matcher = nfa.matcher();
+			CountingSequence s = new CountingSequence(line);
+			boolean accepted = new LazyDFA(nfa.compile(), true, LazyDFA.DEFAULT_MEMORY_BUDGET).acceptsLine(s, 0);
+			long lazyReads = s.reads;
+			s.reads = 0;
+			boolean found = matcher.find(s, 0) != null;
+			long findReads = s.reads;
+			s.reads = 0;
+			boolean foundGroups = matcher.findGroups(s, 0, new int[20]);
+			long groupsReads = s.reads;
+			if(accepted || found || foundGroups) throw new RuntimeException(pattern + " matched " + line.substring(0, 10) + "...");
+			if(lazyReads > 10 || findReads > 10 || groupsReads > 50)
+				throw new RuntimeException(pattern + " read " + lazyReads + ", " + findReads + " and " + groupsReads + " characters of a line it stops matching after 5");
+		}
+
+		/* It must still match at the start */
+		NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter("^[a-x]z").getPosfixExpression());
+		if(!nfa.matcher().acceptsLine("bza") || nfa.matcher().find("bza", 0) == null || !nfa.matcher().findGroups("bza", 0, new int[2]))
+			throw new RuntimeException("^[a-x]z did not match bza");
+		System.out.println("All tests passed!");
+	}
+
+	private static class CountingSequence implements CharSequence {
+
+		// A CharSequence that counts how many characters are read from it
+
+		private final CharSequence s;
+		long reads;
+
+		CountingSequence(CharSequence s) {
+			this.s = s;
+		}
+
+		public int length() {
+			return s.length();
+		}
+
+		public char charAt(int index) {
+			reads++;
+			return s.charAt(index);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return s.subSequence(start, end);
+		}
+
+		public String toString() { // Used by LiteralPrefilter, and not counted
+			return s.toString();
+		}
+	}
+
+}
@@ -12,28 +12,42 @@
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.Scanner;
-import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class NFA {
 	
-	private static int stateIDsource = 0;
+	private static final AtomicInteger stateIDsource = new AtomicInteger(); // NFAs may be built by several threads at once
 
 	private int initialState;
 	private HashSet<Integer> allStates;
 	private HashSet<Integer> acceptStates;
 	private HashSet<Edge> transitions;
 	
-	private HashSet<Integer> currentStates;
+	private LiteralPrefilter prefilter; // Literals every match contains, only known for NFAs built from a postfix expression
+	private BitParallelNFA bitParallel; // Used for matching when the pattern is small enough, only built from a postfix expression
+	private String postfixExpression; // Only known for NFAs built from a postfix expression, for compileCaptures
+	private volatile CaptureProgram captures;
+	private volatile CompiledNFA compiled;
+	private volatile CompiledNFA compiledUTF8; // Same automaton over UTF-8 bytes, for searching files without decoding them
+	private volatile int cacheBudget = LazyDFA.DEFAULT_MEMORY_BUDGET;
+	private volatile DFA minimalWholeStringDFA; // Only built by compileDFA
+	private volatile DFA minimalLineDFA;
+	private volatile DFA minimalUTF8LineDFA;
+	private volatile ThreadLocal<Matcher> matchers = newMatcherPool(); // One matcher per thread for accepts, acceptsLine and find
 	
-	private NFA(int initialState, HashSet<Integer> allStates, HashSet<Integer> acceptStates, HashSet<Edge> transitions) {
+	NFA(int initialState, HashSet<Integer> allStates, HashSet<Integer> acceptStates, HashSet<Edge> transitions) {
+		/* The sets are kept, not copied: every caller builds new ones for the NFA */
 		this.initialState = initialState;
-		this.allStates = new HashSet<Integer>(allStates);
-		this.acceptStates = new HashSet<Integer>(acceptStates);
-		this.transitions = new HashSet<Edge>(transitions);
+		this.allStates = allStates;
+		this.acceptStates = acceptStates;
+		this.transitions = transitions;
 	}
 	
 	public String toString() {
@@ -62,7 +76,7 @@ public class NFA {
 			
 			/* Add the neighbours of the current node reachable by epsilon transitions to the queue */
 			for(Edge transition: transitions) {
-				if(transition.getSourceState() == curr && transition.isEpsilonTransition() && !epsilonClosure.contains(transition.getDestinationState())) {
+				if(transition.getSourceState() == curr && transition.isEpsilonTransition() && transition.getAnchor() == 0 && !epsilonClosure.contains(transition.getDestinationState())) {
 					q.add(transition.getDestinationState());
 				}
 			}
@@ -71,79 +85,173 @@ public class NFA {
 		return epsilonClosure;
 	}
 	
-	public boolean accepts(String s) {
-		// Checks whether this automaton accepts the string 's'.
-		
-		this.currentStates = epsilonClosure(this.initialState); // Start out with the epsilon closure of the starting node
-		HashSet<Integer> nextStates = new HashSet<Integer>();
-		
-		for(int i=0; i<s.length(); i++) { // Loop through each character of the string
-			for(int state: this.currentStates) { // For each of the states we are in
-                /* Calculate the next states */
-				for(Edge transition: this.transitions) {
-					if(transition.getSourceState() == state && transition.getSymbol() == s.charAt(i) && !nextStates.contains(transition.getDestinationState())) {
-						nextStates.addAll(epsilonClosure(transition.getDestinationState()));
-					}
-				}
+	public CompiledNFA compile() {
+		/* Lays this automaton out in flat, state-indexed arrays the first time it is needed.
+		 * The NFA never changes after it is constructed, so the result can be kept and shared
+		 * by every thread. */
+		CompiledNFA result = compiled;
+		if(result == null) {
+			synchronized(this) {
+				if(compiled == null) compiled = new CompiledNFA(initialState, acceptStates, transitions);
+				result = compiled;
 			}
-			currentStates = new HashSet<Integer>(nextStates);
-			nextStates.clear();
 		}
-		
-		/* At the end, if any of the states the NFA is currently in is accepting accept the string 's'. Otherwise don't */
-		for(int state: currentStates) {
-			if(this.acceptStates.contains(state)) return true;
+		return result;
+	}
+	
+	public CaptureProgram compileCaptures() {
+		/* Builds the program that finds the capturing groups of matches the first time it is
+		 * needed, see CaptureProgram. Only NFAs built from a postfix expression know their groups. */
+		CaptureProgram result = captures;
+		if(result == null) {
+			if(postfixExpression == null) throw new RuntimeException("Only an NFA built from a postfix expression has capturing groups");
+			synchronized(this) {
+				if(captures == null) captures = CaptureProgram.fromPostfix(postfixExpression);
+				result = captures;
+			}
 		}
-		
-		return false;
-		
+		return result;
+	}
+	
+	LiteralPrefilter getPrefilter() { // Null if there is no literal every match contains
+		return prefilter;
+	}
+	
+	BitParallelNFA getBitParallel() { // Null if the pattern has too many symbols or is not known
+		return bitParallel;
+	}
+	
+	DFA getMinimalWholeStringDFA() { // The DFA built by compileDFA for accepts, or null
+		return minimalWholeStringDFA;
+	}
+	
+	DFA getMinimalLineDFA() { // The DFA built by compileDFA for acceptsLine, or null
+		return minimalLineDFA;
+	}
+	
+	DFA getMinimalUTF8LineDFA() { // The DFA built by compileDFA for lines of UTF-8 bytes, or null
+		return minimalUTF8LineDFA;
+	}
+	
+	static CompiledNFA compileTagged(List<NFA> nfas) {
+		/* Builds the union of all the NFAs and compiles it, tagging the accept states of
+		 * nfas.get(i) with i so that a match tells which of them it came from. A new initial
+		 * state leads to all of them at once, since folding them with union would copy the
+		 * union built so far for every NFA. */
+		int initialState = newState();
+		HashMap<Integer, Integer> acceptTags = new HashMap<Integer, Integer>();
+		HashSet<Edge> transitions = new HashSet<Edge>();
+		for(int i=0; i<nfas.size(); i++) {
+			NFA nfa = nfas.get(i);
+			for(int acceptState: nfa.acceptStates)
+				acceptTags.put(acceptState, i);
+			transitions.add(Edge.epsilonTransition(initialState, nfa.initialState));
+			transitions.addAll(nfa.transitions);
+		}
+		return new CompiledNFA(initialState, acceptTags, transitions);
+	}
+	
+	public Matcher matcher() {
+		/* Returns a new matcher for this automaton. A matcher keeps the DFA states it has built
+		 * and its scratch space between calls, so it must only be used by one thread at a time,
+		 * but any number of threads can match with the same NFA through their own matchers. */
+		return new Matcher(this, cacheBudget);
+	}
+	
+	public StreamMatcher streamMatcher(StreamMatcher.Listener listener) {
+		// Returns a new matcher for text pushed to it in chunks, see StreamMatcher
+		return new StreamMatcher(this, false, cacheBudget, listener);
+	}
+	
+	public StreamMatcher utf8StreamMatcher(StreamMatcher.Listener listener) {
+		// Same as streamMatcher, for UTF-8 bytes, with offsets counted in bytes
+		return new StreamMatcher(this, true, cacheBudget, listener);
+	}
+	
+	Matcher localMatcher() { // The matcher this thread reuses for accepts, acceptsLine and find
+		return matchers.get();
+	}
+	
+	private ThreadLocal<Matcher> newMatcherPool() {
+		return new ThreadLocal<Matcher>() {
+			@Override
+			protected Matcher initialValue() {
+				return matcher();
+			}
+		};
+	}
+	
+	public void setCacheBudget(int bytes) {
+		/* Sets how much memory the lazily built DFAs may use for cached states before
+		 * they are flushed. Already cached states are dropped. */
+		cacheBudget = bytes;
+		matchers = newMatcherPool();
+	}
+	
+	public CompiledNFA compileUTF8() {
+		CompiledNFA result = compiledUTF8;
+		if(result == null) {
+			synchronized(this) {
+				if(compiledUTF8 == null) compiledUTF8 = compile().toUTF8();
+				result = compiledUTF8;
+			}
+		}
+		return result;
+	}
+	
+	public boolean compileDFA(int stateLimit) {
+		/* Builds minimal DFAs for accepts and acceptsLine ahead of time, so matching never
+		 * computes a state again. A DFA that would need more than 'stateLimit' states is not
+		 * built and that method keeps using the lazily built DFA. Returns true if both fit. */
+		minimalWholeStringDFA = DFA.build(compile(), false, stateLimit);
+		minimalLineDFA = DFA.build(compile(), true, stateLimit);
+		minimalUTF8LineDFA = DFA.build(compileUTF8(), true, stateLimit);
+		matchers = newMatcherPool(); // Matchers only pick up the DFAs when they are created
+		return minimalWholeStringDFA != null && minimalLineDFA != null && minimalUTF8LineDFA != null;
+	}
+	
+	public boolean accepts(String s) {
+		// Checks whether this automaton accepts the string 's'.
+		return localMatcher().accepts(s);
 	}
 
 	public boolean acceptsLine(String line) {
 		/* Checks whether this automaton accepts any part of line.
-		 * Implemented using Algorithm 2 in the project document */
-		
-		this.currentStates = new HashSet<Integer>();
-		HashSet<Integer> nextStates = new HashSet<Integer>();
-		
-		int i = -1; // Index of current character in the line
-		
-		while(true) {
-			currentStates.add(initialState);
-			
-			nextStates = new HashSet<Integer>(currentStates); // nextStates = currentStates
-			
-			/* Add the epsilon closure of all states in nextStates to currentStates */ 
-			for(int state: nextStates)
-				currentStates.addAll(epsilonClosure(state));
-			
-			/* Return true if any of the currentStates are accepting */
-			for(int acceptState: acceptStates)
-				if(currentStates.contains(acceptState)) return true;
-			
-			if(i == line.length()-1) return false; // If end of line return false
-			i++; // Next character
-			
-			nextStates.clear();
-			for(int state: this.currentStates) { // For each of the states we are in
-                /* Calculate the next states */
-				for(Edge transition: this.transitions) {
-					if(transition.getSourceState() == state && transition.getSymbol() == line.charAt(i) && !nextStates.contains(transition.getDestinationState())) {
-						nextStates.add(transition.getDestinationState());
-					}
-				}
-			}
-			
-			currentStates = new HashSet<Integer>(nextStates); // currentStates = nextStates
-				
-		}
-		
+		 * Implemented using Algorithm 2 in the project document, with the sets of
+		 * states visited cached as DFA states. Lines missing a literal that every match
+		 * contains are rejected without running the automaton. Lines that take long to match
+		 * are recorded by Flight Recorder, see EngineMetrics. */
+		Object event = EngineMetrics.beginLine();
+		boolean accepted = localMatcher().acceptsLine(line);
+		if(event != null) EngineMetrics.lineMatched(event, line);
+		return accepted;
+	}
+	
+	public Match find(CharSequence s, int from) {
+		// Returns the leftmost-longest match in 's' starting at or after 'from', or null if there is none
+		return localMatcher().find(s, from);
+	}
+	
+	public String[] findGroups(String s) {
+		/* Returns the text of every group of the first match in 's' like java.util.regex, the
+		 * whole match first and null for the groups that did not take part, or null if there is
+		 * no match. Matcher.findGroups does the same without allocating. */
+		int[] slots = new int[compileCaptures().getSlotCount()];
+		if(!localMatcher().findGroups(s, 0, slots)) return null;
+		String[] groups = new String[slots.length / 2];
+		for(int k=0; k<groups.length; k++)
+			groups[k] = (slots[2*k] < 0) ? null : s.substring(slots[2*k], slots[2*k+1]);
+		return groups;
 	}
 	
 	private static int newState() {
 		/* Every new state must have distinct id, so increment the id generator
 		 * each time you need a new one */
-		return stateIDsource++;
+		return stateIDsource.getAndIncrement();
+	}
+	
+	static int newStates(int count) { // Reserves 'count' consecutive state ids and returns the first
+		return stateIDsource.getAndAdd(count);
 	}
 	
 	public static NFA epsilonNFA() { // Returns an NFA which only accepts epsilon
@@ -188,6 +296,27 @@ public class NFA {
 		return new NFA(initialState, statesSet, acceptStates, transitions);
 	}
 	
+	public static NFA charClass(CharClass charClass) {
+		
+		int initialState = newState();
+		int finalState = newState();
+		
+		HashSet<Integer> statesSet = new HashSet<Integer>();
+		statesSet.add(initialState);
+		statesSet.add(finalState);
+
+		HashSet<Integer> acceptStates = new HashSet<Integer>();
+		acceptStates.add(finalState);
+		
+		/* Same as singleSymbol, but with one edge for every range of characters in the class */
+		HashSet<Edge> transitions = new HashSet<Edge>();
+		for(int i=0; i<charClass.getRangeCount(); i++) {
+			transitions.add(new Edge(initialState, finalState, charClass.getLow(i), charClass.getHigh(i)));
+		}
+		
+		return new NFA(initialState, statesSet, acceptStates, transitions);
+	}
+	
 	public static NFA union(NFA nfa1, NFA nfa2) {
         
 		int initialState = newState();
@@ -263,9 +392,87 @@ public class NFA {
 		return new NFA(initialState, statesSet, acceptStates, transitions);
 	}
 	
+	public static NFA repeat(NFA nfa, int min, int max) {
+		/* Accepts 'min' to 'max' strings accepted by the NFA one after the other, or 'min' or
+		 * more if 'max' is negative. So x+ is repeat(x, 1, -1), x? is repeat(x, 0, 1) and x{m,n}
+		 * is repeat(x, m, n).
+		 * The copies of the NFA are laid out in a single pass: every copy after the first is
+		 * entered from the accept states of the one before it, and the accept states of the
+		 * copies from the min-th on accept. This is x x (x (x)?)? for x{2,4}, built in time
+		 * linear in the number of copies, where chaining concatenate and union would copy the
+		 * whole automaton built so far for every copy. */
+		
+		int copies = (max < 0) ? Math.max(min, 1) : max;
+		int initialState = newState();
+		
+		HashSet<Integer> statesSet = new HashSet<Integer>();
+		statesSet.add(initialState);
+		HashSet<Integer> acceptStates = new HashSet<Integer>();
+		HashSet<Edge> transitions = new HashSet<Edge>();
+		if(min == 0) acceptStates.add(initialState); // Zero copies are enough
+		
+		HashSet<Integer> previousAccepts = new HashSet<Integer>();
+		previousAccepts.add(initialState);
+		int copyInitialState = initialState;
+		for(int i=1; i<=copies; i++) {
+			/* The first copy reuses the states of the NFA, the others get new ones */
+			HashMap<Integer, Integer> rename = new HashMap<Integer, Integer>();
+			for(int state: nfa.allStates)
+				rename.put(state, (i == 1) ? state : newState());
+			statesSet.addAll(rename.values());
+			for(Edge edge: nfa.transitions) {
+				int source = rename.get(edge.getSourceState());
+				int destination = rename.get(edge.getDestinationState());
+				if(edge.getAnchor() != 0)
+					transitions.add(Edge.assertion(source, destination, edge.getAnchor()));
+				else if(edge.isEpsilonTransition())
+					transitions.add(Edge.epsilonTransition(source, destination));
+				else
+					transitions.add(new Edge(source, destination, edge.getSymbol(), edge.getHighSymbol()));
+			}
+			
+			copyInitialState = rename.get(nfa.initialState);
+			for(int acceptState: previousAccepts)
+				transitions.add(Edge.epsilonTransition(acceptState, copyInitialState));
+			previousAccepts = new HashSet<Integer>();
+			for(int acceptState: nfa.acceptStates)
+				previousAccepts.add(rename.get(acceptState));
+			if(i >= min) acceptStates.addAll(previousAccepts);
+		}
+		
+		/* Without an upper bound the last copy may be repeated any number of times, like star */
+		if(max < 0) {
+			for(int acceptState: previousAccepts)
+				transitions.add(Edge.epsilonTransition(acceptState, copyInitialState));
+		}
+		
+		return new NFA(initialState, statesSet, acceptStates, transitions);
+	}
+	
 	// Takes the file and a postfix expression as input and prints the accepted lines
 	public void acceptedLines(String fileName) {
-		
+		acceptedLines(fileName, false);
+	}
+	
+	/* Same as acceptedLines(fileName), but if 'parallel' is true the file is split into chunks
+	 * that are memory-mapped and searched at the same time by the fork-join pool. The output
+	 * is the same for UTF-8 files. */
+	public void acceptedLines(String fileName, boolean parallel) {
+		Object event = EngineMetrics.beginFileScan();
+		long startTime = System.nanoTime();
+		if(parallel) ParallelLineSearch.acceptedLines(this, fileName);
+		else printAcceptedLines(fileName);
+		EngineMetrics.fileScanned(event, fileName, parallel ? "parallel" : "sequential", startTime);
+	}
+	
+	private void printAcceptedLines(String fileName) {
+		printAcceptedLines(fileName, line -> this.acceptsLine(line) ? "" : null);
+	}
+	
+	/* Prints every line of the file that 'label' gives a label for, with its number and the
+	 * label, or says that none was found. 'label' returns null for a line that is not accepted.
+	 * Shared by every class that searches a file line by line with a Scanner. */
+	static void printAcceptedLines(String fileName, Function<String, String> label) {
 		File file = new File(fileName + ".txt");
 		int lineNumber = 0; // Counts the number of lines read from the file
 		boolean found = false; // If any line is accepted this becomes true
@@ -275,8 +482,9 @@ public class NFA {
 			while(input.hasNextLine()) { // Loop until the end of the file
 				String line = input.nextLine(); // Get the current line from the file
 				
-				if(this.acceptsLine(line)) { // Check whether our NFA accepts the current line
-					System.out.println("ACCEPTED LINE (" + lineNumber + ") : " + line);
+				String accepted = label.apply(line);
+				if(accepted != null) {
+					System.out.println("ACCEPTED LINE (" + lineNumber + ")" + accepted + " : " + line);
 					found = true;
 				}
 
@@ -292,37 +500,35 @@ public class NFA {
 		}
 	}
 	
+	/* Same as acceptedLines(fileName), but the file is memory-mapped and the lines are matched
+	 * as UTF-8 bytes. Only accepted lines are decoded. */
+	public void acceptedLinesMapped(String fileName) {
+		Object event = EngineMetrics.beginFileScan();
+		long startTime = System.nanoTime();
+		MappedLineSearch.acceptedLines(this, fileName);
+		EngineMetrics.fileScanned(event, fileName, "mapped", startTime);
+	}
+	
 	public static NFA getNFAfromPostfix(String postfixExpression) { // Returns an NFA built from a postfix expression
 		
-		Stack<NFA> stack = new Stack<NFA>(); // Initialize a new stack
-		NFA nfa1, nfa2;
+		Object event = EngineMetrics.beginBuild();
+		long startTime = System.nanoTime();
 		
-		// Loop through each character of postfix expression
-		for(int i=0; i<postfixExpression.length(); i++) {
-			char c = postfixExpression.charAt(i); // Get current character
-			
-			if(c == '&') { 
-				nfa2 = stack.pop(); // Get the last NFA object and remove it from stack
-				nfa1 = stack.pop(); // Get the last NFA object and remove it from stack
-				stack.push(concatenate(nfa1, nfa2)); // Build a new NFA by concatenating the previous two NFAs and push it onto the stack
-			}
-			else if(c == '|') {
-				nfa2 = stack.pop(); // Get last NFA object and remove it from stack
-				nfa1 = stack.pop();	// Get last NFA object and remove it from stack
-				stack.push(union(nfa1, nfa2)); // Build a new NFA by making a union of the previous two NFAs and push it onto the stack
-			}
-			else if(c == '*') {
-				nfa1 = stack.pop(); // Get last NFA object and remove it from stack
-				stack.push(star(nfa1)); // Build a new NFA by taking the * (star) of the previous NFA and push it onto the stack
-			}
-			else if(c == '\u03B5') {
-				stack.push(epsilonNFA()); // Push an NFA which only accepts the epsilon transition to the stack
-			}
-			else
-				stack.push(singleSymbol(c)); // Build a new NFA that accepts a single symbol and push it onto the stack
-		}
+		/* Read the expression into a tree and simplify it with RegexOptimizer, then build the NFA
+		 * of the tree with NFABuilder, which only ever adds states and edges, so the time taken is
+		 * linear in the size of the tree. The NFA methods union, concatenate and star would copy
+		 * the whole automaton built so far at every step. */
+		RegexNode tree = RegexOptimizer.optimize(RegexNode.fromPostfix(postfixExpression));
+		NFABuilder builder = new NFABuilder();
+		builder.add(tree);
+		
+		NFA nfa = builder.build(); // The built NFA
+		nfa.prefilter = LiteralPrefilter.fromTree(tree); // Find the literals every match must contain
+		nfa.bitParallel = BitParallelNFA.fromTree(tree); // Null if the pattern has more than 63 symbols
+		nfa.postfixExpression = postfixExpression; // The groups are only built if they are asked for
 		
-		return stack.peek(); // Return the built NFA
+		EngineMetrics.built(event, postfixExpression, nfa.allStates.size(), nfa.transitions.size(), nfa.bitParallel != null, startTime);
+		return nfa;
 	}
 	
 	public static void test() { // Method to test the NFA class
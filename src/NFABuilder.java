@@ -0,0 +1,417 @@
+/*
+ * NFABuilder.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Stack;
+
+public class NFABuilder {
+
+	/* Builds an NFA in time linear in the size of the pattern, like Thompson's construction with
+	 * fragments. NFA.union, concatenate and star copy every state and edge of their operands into
+	 * new sets, so building a pattern with k operators that way takes O(k^2) time; a union of
+	 * 20000 words took minutes. Here all fragments share one growing list of states and edges,
+	 * and the operators only add the few edges that connect their operands:
+	 *
+	 *  - A fragment is an automaton under construction: its initial state and its accept
+	 *    states, kept as a linked list through 'nextAccept' so two lists are joined in O(1).
+	 *  - Concatenating patches the accept states of the first fragment to the initial state of
+	 *    the second, after which those states are no longer accepting. Every accept state is
+	 *    patched this way at most once, so the total work stays linear.
+	 *  - Star adds one new state that is both initial and accepting, so its accept list has a
+	 *    single state whatever the operand.
+	 *
+	 * The operators work on a stack of fragments, in the order of a postfix expression. Since
+	 * the operands of an operator are always the fragments built last, the states and edges of
+	 * a fragment are a contiguous range of the shared lists. repeat copies that range with its
+	 * states renumbered, which takes time linear in the size of the copies.
+	 *
+	 * The edges of every state are kept in the order they were added, which is the order of
+	 * preference between them: the first branch of a union before the second, and another
+	 * round of a star or repetition before leaving it. build ignores the order, but
+	 * buildCaptures keeps it for the Pike VM, which prefers threads the same way. */
+
+	private int stateCount;
+	private int[] nextAccept = new int[16]; // The accept state after each state in its fragment's list
+
+	private int edgeCount;
+	private int[] edgeSources = new int[16];
+	private int[] edgeTargets = new int[16];
+	private char[] edgeLows = new char[16];
+	private char[] edgeHighs = new char[16];
+	private boolean[] edgeEpsilon = new boolean[16];
+
+	private final Stack<Fragment> stack = new Stack<Fragment>();
+
+	private static class Fragment {
+		final int initialState;
+		final int firstAccept, lastAccept; // The accept list, from firstAccept through nextAccept up to lastAccept
+		final int firstState, firstEdge; // Where its range of states and edges starts, the range ends with the lists
+
+		Fragment(int initialState, int firstAccept, int lastAccept, int firstState, int firstEdge) {
+			this.initialState = initialState;
+			this.firstAccept = firstAccept;
+			this.lastAccept = lastAccept;
+			this.firstState = firstState;
+			this.firstEdge = firstEdge;
+		}
+	}
+
+	private int newState() {
+		if(stateCount == nextAccept.length) nextAccept = Arrays.copyOf(nextAccept, 2 * stateCount);
+		return stateCount++;
+	}
+
+	private void addEdge(int source, int target, char low, char high, boolean epsilon) {
+		if(edgeCount == edgeSources.length) {
+			int capacity = 2 * edgeCount;
+			edgeSources = Arrays.copyOf(edgeSources, capacity);
+			edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+			edgeLows = Arrays.copyOf(edgeLows, capacity);
+			edgeHighs = Arrays.copyOf(edgeHighs, capacity);
+			edgeEpsilon = Arrays.copyOf(edgeEpsilon, capacity);
+		}
+		edgeSources[edgeCount] = source;
+		edgeTargets[edgeCount] = target;
+		edgeLows[edgeCount] = low;
+		edgeHighs[edgeCount] = high;
+		edgeEpsilon[edgeCount] = epsilon;
+		edgeCount++;
+	}
+
+	private void addEpsilon(int source, int target) { // An epsilon edge is stored with the anchor it asserts, '\0' for none
+		addEdge(source, target, '\0', '\0', true);
+	}
+
+	private void addSave(int source, int target, int slot) { // and with the capture slot it saves plus one, '\0' for none
+		addEdge(source, target, '\0', (char) (slot + 1), true);
+	}
+
+	private void patch(Fragment fragment, int target) {
+		// Adds an epsilon edge from every accept state of 'fragment' to 'target'
+		for(int state=fragment.firstAccept; ; state=nextAccept[state]) {
+			addEpsilon(state, target);
+			if(state == fragment.lastAccept) break;
+		}
+	}
+
+	/* Operators, which pop their operands from the stack and push the result like the postfix
+	 * operators of NFA.getNFAfromPostfix. Each builds the same language as the NFA method of the
+	 * same name. */
+
+	public void epsilon() {
+		int state = newState();
+		stack.push(new Fragment(state, state, state, state, edgeCount));
+	}
+
+	public void anchor(char anchor) {
+		// The anchor '^' or '$', which matches the empty string at the start or the end of the input
+		int firstEdge = edgeCount;
+		int initialState = newState();
+		int finalState = newState();
+		addEdge(initialState, finalState, anchor, anchor, true);
+		stack.push(new Fragment(initialState, finalState, finalState, initialState, firstEdge));
+	}
+
+	public void symbol(char symbol) {
+		charClass(CharClass.of(symbol));
+	}
+
+	public void charClass(CharClass charClass) {
+		int firstEdge = edgeCount;
+		int initialState = newState();
+		int finalState = newState();
+		for(int i=0; i<charClass.getRangeCount(); i++)
+			addEdge(initialState, finalState, charClass.getLow(i), charClass.getHigh(i), false);
+		stack.push(new Fragment(initialState, finalState, finalState, initialState, firstEdge));
+	}
+
+	public void concatenate() {
+		Fragment second = stack.pop();
+		Fragment first = stack.pop();
+		patch(first, second.initialState);
+		stack.push(new Fragment(first.initialState, second.firstAccept, second.lastAccept, first.firstState, first.firstEdge));
+	}
+
+	public void union() {
+		Fragment second = stack.pop();
+		Fragment first = stack.pop();
+		int initialState = newState();
+		addEpsilon(initialState, first.initialState);
+		addEpsilon(initialState, second.initialState);
+		nextAccept[first.lastAccept] = second.firstAccept; // Join the two accept lists
+		stack.push(new Fragment(initialState, first.firstAccept, second.lastAccept, first.firstState, first.firstEdge));
+	}
+
+	public void star() {
+		Fragment fragment = stack.pop();
+		int state = newState(); // Initial and the only accepting state
+		addEpsilon(state, fragment.initialState);
+		patch(fragment, state);
+		stack.push(new Fragment(state, state, state, fragment.firstState, fragment.firstEdge));
+	}
+
+	public void repeat(int min, int max) {
+		/* Same layout as NFA.repeat: the copies are entered one after the other, the accept
+		 * states of the copies from the min-th on accept, and without an upper bound the last
+		 * copy loops. The first copy is the fragment itself, the others copy its range. */
+		Fragment fragment = stack.pop();
+		int endState = stateCount, endEdge = edgeCount; // End of the range to copy
+		int copies = (max < 0) ? Math.max(min, 1) : max;
+
+		int initialState = newState();
+		int firstAccept = -1, lastAccept = -1; // The accept list of the result, empty so far
+		if(min == 0) firstAccept = lastAccept = initialState; // Zero copies are enough
+
+		int previousFirst = initialState, previousLast = initialState; // Accept list of the copy before
+		Fragment copy = fragment;
+		for(int i=1; i<=copies; i++) {
+			if(i > 1) copy = copy(fragment, endState, endEdge);
+			for(int state=previousFirst; ; state=nextAccept[state]) {
+				addEpsilon(state, copy.initialState);
+				if(state == previousLast) break;
+			}
+			previousFirst = copy.firstAccept;
+			previousLast = copy.lastAccept;
+			if(i >= min) { // Append the copy's accept states to the result
+				if(firstAccept < 0) firstAccept = copy.firstAccept;
+				else nextAccept[lastAccept] = copy.firstAccept;
+				lastAccept = copy.lastAccept;
+			}
+		}
+
+		/* Without an upper bound the last copy may be repeated any number of times, like star */
+		if(max < 0) patch(copy, copy.initialState);
+
+		stack.push(new Fragment(initialState, firstAccept, lastAccept, fragment.firstState, fragment.firstEdge));
+	}
+
+	public void group(int group) {
+		/* Capturing group 'group' around the fragment: entering it saves the position in slot
+		 * 2*group and leaving it in slot 2*group+1. The NFA built ignores the slots. */
+		Fragment fragment = stack.pop();
+		int open = newState();
+		int close = newState();
+		addSave(open, fragment.initialState, 2 * group);
+		for(int state=fragment.firstAccept; ; state=nextAccept[state]) {
+			addSave(state, close, 2 * group + 1);
+			if(state == fragment.lastAccept) break;
+		}
+		stack.push(new Fragment(open, close, close, fragment.firstState, fragment.firstEdge));
+	}
+
+	public void add(RegexNode node) {
+		// Pushes the automaton of a whole tree, built with the operators above in postfix order
+		switch(node.getKind()) {
+		case EMPTY:
+			epsilon();
+			break;
+		case START:
+			anchor('^');
+			break;
+		case END:
+			anchor('$');
+			break;
+		case SYMBOL:
+			charClass(node.getCharClass());
+			break;
+		case STAR:
+			add(node.getChildren().get(0));
+			star();
+			break;
+		case REPEAT:
+			add(node.getChildren().get(0));
+			repeat(node.getMin(), node.getMax());
+			break;
+		case GROUP:
+			add(node.getChildren().get(0));
+			group(node.getGroup());
+			break;
+		case CONCAT:
+		case UNION:
+			add(node.getChildren().get(0));
+			for(int i=1; i<node.getChildren().size(); i++) {
+				add(node.getChildren().get(i));
+				if(node.getKind() == RegexNode.Kind.CONCAT) concatenate();
+				else union();
+			}
+			break;
+		}
+	}
+
+	private Fragment copy(Fragment fragment, int endState, int endEdge) {
+		// Copies the states fragment.firstState..endState-1 and the edges between them to new states
+		int offset = stateCount - fragment.firstState;
+		for(int s=fragment.firstState; s<endState; s++)
+			newState();
+		for(int e=fragment.firstEdge; e<endEdge; e++)
+			addEdge(edgeSources[e] + offset, edgeTargets[e] + offset, edgeLows[e], edgeHighs[e], edgeEpsilon[e]);
+		for(int state=fragment.firstAccept; state!=fragment.lastAccept; state=nextAccept[state])
+			nextAccept[state + offset] = nextAccept[state] + offset;
+		return new Fragment(fragment.initialState + offset, fragment.firstAccept + offset, fragment.lastAccept + offset, fragment.firstState + offset, fragment.firstEdge);
+	}
+
+	public NFA build() {
+		/* Returns the NFA of the single fragment left on the stack. Its states get ids that no
+		 * other NFA uses, like the states made by the NFA methods. */
+		if(stack.size() != 1) throw new RuntimeException("The postfix expression does not describe a single automaton");
+		Fragment fragment = stack.peek();
+		int base = NFA.newStates(stateCount);
+
+		HashSet<Integer> allStates = new HashSet<Integer>(2 * stateCount);
+		for(int s=0; s<stateCount; s++)
+			allStates.add(base + s);
+		HashSet<Integer> acceptStates = new HashSet<Integer>();
+		for(int state=fragment.firstAccept; ; state=nextAccept[state]) {
+			acceptStates.add(base + state);
+			if(state == fragment.lastAccept) break;
+		}
+		HashSet<Edge> transitions = new HashSet<Edge>(2 * edgeCount);
+		for(int e=0; e<edgeCount; e++) {
+			if(edgeEpsilon[e] && edgeLows[e] != '\0') transitions.add(Edge.assertion(base + edgeSources[e], base + edgeTargets[e], edgeLows[e]));
+			else if(edgeEpsilon[e]) transitions.add(Edge.epsilonTransition(base + edgeSources[e], base + edgeTargets[e]));
+			else transitions.add(new Edge(base + edgeSources[e], base + edgeTargets[e], edgeLows[e], edgeHighs[e]));
+		}
+		return new NFA(base + fragment.initialState, allStates, acceptStates, transitions);
+	}
+
+	public CaptureProgram buildCaptures(int groupCount) {
+		/* Returns the program of the single fragment left on the stack for a Pike VM, with
+		 * groups 1..groupCount. The whole pattern becomes group 0 and is followed by a new state
+		 * that accepts, so every match ends by saving where it ends. The builder cannot be used
+		 * afterwards. */
+		if(stack.size() != 1) throw new RuntimeException("The postfix expression does not describe a single automaton");
+		group(0);
+		Fragment fragment = stack.peek();
+		int matchState = newState();
+		patch(fragment, matchState);
+
+		/* Group the edges by their source state, keeping their order */
+		int[] edgeStart = new int[stateCount + 1];
+		for(int e=0; e<edgeCount; e++)
+			edgeStart[edgeSources[e] + 1]++;
+		for(int s=0; s<stateCount; s++)
+			edgeStart[s + 1] += edgeStart[s];
+		int[] targets = new int[edgeCount];
+		char[] lows = new char[edgeCount];
+		char[] highs = new char[edgeCount];
+		boolean[] epsilon = new boolean[edgeCount];
+		int[] next = Arrays.copyOf(edgeStart, stateCount);
+		for(int e=0; e<edgeCount; e++) {
+			int i = next[edgeSources[e]]++;
+			targets[i] = edgeTargets[e];
+			lows[i] = edgeLows[e];
+			highs[i] = edgeHighs[e];
+			epsilon[i] = edgeEpsilon[e];
+		}
+		return new CaptureProgram(stateCount, fragment.initialState, matchState, 2 * (groupCount + 1), edgeStart, targets, lows, highs, epsilon);
+	}
+
+	public static void test() { // Method to test the NFABuilder class
+		System.out.println("Testing...");
+
+		/* The builder must accept the same strings as the NFA methods, which are built one
+		 * combinator at a time */
+		String[] patterns = {"(a|b)*abb", "a(b|c)*d?", "(ab){2,3}c+", "((a|b)*c){0,2}", "(a*)*b", "\u03B5|a", "a{0}b", "(a|\u03B5){3,}"};
+		Random random = new Random(1);
+		for(String pattern: patterns) {
+			String postfix = new InfixToPostfixConverter(pattern).getPosfixExpression();
+			NFA built = NFA.getNFAfromPostfix(postfix);
+			NFA combined = combine(postfix);
+			for(int i=0; i<2000; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(10);
+				for(int k=0; k<length; k++)
+					sb.append("abcd".charAt(random.nextInt(4)));
+				String s = sb.toString();
+				if(built.accepts(s) != combined.accepts(s)) throw new RuntimeException(pattern + " built differently for " + s);
+			}
+		}
+		System.out.println("Patterns are built the same as with the NFA methods");
+
+		/* A union of 20000 words, like a generated denylist, is built in linear time: the number
+		 * of states is exact, and doubling the number of words must not take four times as long */
+		long[] nanos = new long[2];
+		for(int round=0; round<2; round++) {
+			int words = 10000 * (round + 1);
+			StringBuilder sb = new StringBuilder();
+			String[] list = new String[words];
+			for(int i=0; i<words; i++) {
+				if(i > 0) sb.append('|');
+				list[i] = Integer.toString(1000000 + i, 36); // Five characters
+				sb.append(list[i]);
+			}
+			String postfix = new InfixToPostfixConverter(sb.toString()).getPosfixExpression();
+			NFA.getNFAfromPostfix(postfix); // Warmup
+			long start = System.nanoTime();
+			NFA nfa = NFA.getNFAfromPostfix(postfix);
+			nanos[round] = System.nanoTime() - start;
+
+			int expectedStates = 5 * words * 2 + (words - 1); // Two states per symbol, one per union
+			if(nfa.compile().getStateCount() > expectedStates) throw new RuntimeException("Too many states: " + nfa.compile().getStateCount());
+			if(!nfa.acceptsLine("xx" + list[words / 2] + "xx") || !nfa.accepts(list[words - 1]) || nfa.accepts(list[0] + list[1]))
+				throw new RuntimeException("The union of " + words + " words matches the wrong strings");
+			System.out.println(words + " words built in " + nanos[round] / 1e6 + " ms");
+		}
+		if(nanos[1] > 4 * nanos[0]) throw new RuntimeException("Building is not linear");
+
+		/* Repetitions that would expand to too many states are rejected before anything is
+		 * built, however they are nested */
+		for(String pattern: new String[] {"(a{1000}){1000}", "a{1,100000}", "((ab){100}c){1000}"}) {
+			boolean rejected = false;
+			try {
+				new InfixToPostfixConverter(pattern);
+			} catch(RuntimeException e) {
+				rejected = true;
+			}
+			if(!rejected) throw new RuntimeException(pattern + " is not rejected");
+		}
+		System.out.println("Patterns that expand too much are rejected");
+
+		System.out.println("All tests passed!");
+	}
+
+	private static NFA combine(String postfix) {
+		// Builds the NFA for a postfix expression of literals and operators with the NFA methods
+		Stack<NFA> stack = new Stack<NFA>();
+		for(int i=0; i<postfix.length(); i++) {
+			char c = postfix.charAt(i);
+			if(c == '&') {
+				NFA second = stack.pop();
+				stack.push(NFA.concatenate(stack.pop(), second));
+			} else if(c == '|') {
+				NFA second = stack.pop();
+				stack.push(NFA.union(stack.pop(), second));
+			} else if(c == '*') {
+				stack.push(NFA.star(stack.pop()));
+			} else if(c == '+') {
+				stack.push(NFA.repeat(stack.pop(), 1, -1));
+			} else if(c == '?') {
+				stack.push(NFA.repeat(stack.pop(), 0, 1));
+			} else if(c == '{') {
+				int end = postfix.indexOf('}', i);
+				String[] bounds = postfix.substring(i + 1, end).split(",", -1);
+				stack.push(NFA.repeat(stack.pop(), Integer.parseInt(bounds[0]), bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1])));
+				i = end;
+			} else if(c == '(') { // A capturing group matches what its operand matches
+				i = postfix.indexOf(')', i);
+			} else if(c == '\u03B5') {
+				stack.push(NFA.epsilonNFA());
+			} else {
+				stack.push(NFA.singleSymbol(c));
+			}
+		}
+		return stack.peek();
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * ParallelLineSearch.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParallelLineSearch {
+
+	private static final int MIN_CHUNK_SIZE = 1 << 20; // Smaller files are not worth splitting further
+	private static final int MAX_CHUNK_SIZE = 16 << 20; // Bounds the memory each worker reads at once
+	private static final int CHUNKS_AHEAD = 2; // Chunks searched ahead of the one being printed, per worker
+
+	// Takes the file as input and prints the accepted lines like NFA.acceptedLines, reading the file as UTF-8
+	public static void acceptedLines(NFA nfa, String fileName) {
+
+		try {
+			FileChannel channel = FileChannel.open(Paths.get(fileName + ".txt"), StandardOpenOption.READ);
+			try {
+				long[] boundaries = chunkBoundaries(channel);
+
+				/* Search the chunks on the fork-join pool, at most CHUNKS_AHEAD per worker ahead of
+				 * the chunk being printed so the accepted lines held in memory stay bounded however
+				 * large the file is, and print each chunk as soon as the ones before it are done */
+				int ahead = CHUNKS_AHEAD * ForkJoinPool.getCommonPoolParallelism();
+				ArrayDeque<ChunkTask> pending = new ArrayDeque<ChunkTask>();
+				int next = 0; // Next chunk to start
+
+				long lineNumber = 0; // Number of lines in the chunks printed so far
+				boolean found = false; // If any line is accepted this becomes true
+				while(next + 1 < boundaries.length || !pending.isEmpty()) {
+					while(next + 1 < boundaries.length && pending.size() < ahead) {
+						ChunkTask task = new ChunkTask(nfa, channel, boundaries[next], boundaries[next+1]);
+						next++;
+						pending.add(task);
+						ForkJoinPool.commonPool().execute(task);
+					}
+					ChunkResult result = pending.remove().join();
+					for(int i=0; i<result.lines.size(); i++) {
+						System.out.println("ACCEPTED LINE (" + (lineNumber + result.lineNumbers.get(i)) + ") : " + result.lines.get(i));
+						found = true;
+					}
+					lineNumber += result.lineCount;
+				}
+
+				if(!found) {
+					System.out.println("No matches found.");
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (NoSuchFileException e) { // Inform the user if the file is not found
+			System.out.println(fileName + ".txt could not be found.");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static long[] chunkBoundaries(FileChannel channel) throws IOException {
+		/* Splits the file into chunks of roughly equal size, moving every boundary to just
+		 * after the next line break so no line is split between two chunks. Lines end like in
+		 * MappedLineSearch.scan, and a "\r\n" is never split. */
+		long size = channel.size();
+		int workers = ForkJoinPool.getCommonPoolParallelism();
+		long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / (4 * workers)));
+
+		ArrayList<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(0L);
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long position = chunkSize;
+		while(position < size) {
+			long boundary = size;
+			search:
+			while(position < size) { // Look for the next newline
+				buffer.clear();
+				int read = channel.read(buffer, position);
+				if(read <= 0) break;
+				int i = 0;
+				for(; i<read; i++) {
+					byte b = buffer.get(i);
+					if(b == '\n') {
+						boundary = position + i + 1;
+						break search;
+					}
+					if(b == '\r') {
+						if(i + 1 < read) { // Cut after the "\r" or the "\r\n"
+							boundary = position + i + (buffer.get(i + 1) == '\n' ? 2 : 1);
+							break search;
+						}
+						if(i > 0) break; // Read again from the '\r', to see the byte after it
+						boundary = position + 1; // The last byte of the file
+						break search;
+					}
+				}
+				position += i;
+			}
+			if(boundary < size) boundaries.add(boundary);
+			position = boundary + chunkSize;
+		}
+		boundaries.add(size);
+
+		long[] result = new long[boundaries.size()];
+		for(int i=0; i<result.length; i++)
+			result[i] = boundaries.get(i);
+		return result;
+	}
+
+	private static class ChunkResult {
+		ArrayList<Integer> lineNumbers = new ArrayList<Integer>(); // Relative to the first line of the chunk
+		ArrayList<String> lines = new ArrayList<String>();
+		int lineCount;
+	}
+
+	private static class ChunkTask extends RecursiveTask<ChunkResult> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final NFA nfa;
+		private final FileChannel channel;
+		private final long start, end;
+
+		ChunkTask(NFA nfa, FileChannel channel, long start, long end) {
+			this.nfa = nfa;
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected ChunkResult compute() {
+			/* Every worker thread reuses its own matcher, only the compiled automaton is shared.
+			 * The chunk is memory-mapped and searched as UTF-8 bytes. */
+			ChunkResult result = new ChunkResult();
+			try {
+				ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				result.lineCount = MappedLineSearch.scan(nfa.localMatcher(), chunk, 0, chunk.limit(), result.lineNumbers, result.lines);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,400 @@
+/*
+ * PatternArtifact.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+public class PatternArtifact {
+
+	/* A compiled pattern saved to a file, so it can be used without parsing the regular expression
+	 * or building any automaton. The file holds the minimal DFAs that NFA.compileDFA builds, for
+	 * accepts, acceptsLine and lines of UTF-8 bytes. load memory-maps the file and matching reads
+	 * the transition tables straight from the mapped pages. Nothing is copied to the heap, so
+	 * loading takes about as long as checking the checksum and the tables, and processes that
+	 * load the same file share its pages.
+	 *
+	 *     java PatternArtifact <regular expression> <artifact file>
+	 *
+	 * writes the artifact for a pattern. The layout, all ints little-endian:
+	 *
+	 *     magic, version, CRC32 of everything after the header, length of everything after the header
+	 *     length of the pattern in UTF-8 bytes, the bytes, padded to a multiple of 4
+	 *     the DFA for accepts, the DFA for acceptsLine, the DFA for lines of UTF-8 bytes
+	 *
+	 * and every DFA is
+	 *
+	 *     state count, start state, dead state or -1, 1 if the empty input is accepted or else 0,
+	 *     class count, interval count
+	 *     the first character of every interval of the alphabet, and the class of every interval
+	 *     the class of the characters 0..255
+	 *     accept bits, bit s of int s/32 being set if state s is accepting
+	 *     the same bits for the states that accept at the end of the input, see DFA
+	 *     the transition table, state count x class count entries */
+
+	private static final int MAGIC = 0x41445852; // "RXDA" in little-endian
+	private static final int VERSION = 2; // Version 1 had no anchors
+	private static final int HEADER_SIZE = 16;
+
+	private final String pattern;
+	private final MappedDFA wholeStringDFA;
+	private final MappedDFA lineDFA;
+	private final MappedDFA utf8LineDFA;
+
+	private PatternArtifact(String pattern, MappedDFA wholeStringDFA, MappedDFA lineDFA, MappedDFA utf8LineDFA) {
+		this.pattern = pattern;
+		this.wholeStringDFA = wholeStringDFA;
+		this.lineDFA = lineDFA;
+		this.utf8LineDFA = utf8LineDFA;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.out.println("Usage: java PatternArtifact <regular expression> <artifact file>");
+			return;
+		}
+		save(args[0], args[1], DFA.DEFAULT_STATE_LIMIT);
+	}
+
+	public static void save(String regex, String fileName, int stateLimit) throws IOException {
+		/* Compiles 'regex' and writes its artifact to 'fileName'. Invalid patterns throw the same
+		 * exception as InfixToPostfixConverter, and so do patterns with a DFA of more than
+		 * 'stateLimit' states, which cannot be saved. */
+		NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(regex).getPosfixExpression());
+		DFA[] dfas = {
+			DFA.build(nfa.compile(), false, stateLimit),
+			DFA.build(nfa.compile(), true, stateLimit),
+			DFA.build(nfa.compileUTF8(), true, stateLimit),
+		};
+		byte[] patternBytes = regex.getBytes(StandardCharsets.UTF_8);
+		int size = HEADER_SIZE + 4 + align(patternBytes.length);
+		for(DFA dfa: dfas) {
+			if(dfa == null) throw new RuntimeException("The DFA of " + regex + " has more than " + stateLimit + " states and cannot be saved");
+			size += sectionSize(dfa);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(HEADER_SIZE);
+		buffer.putInt(patternBytes.length);
+		buffer.put(patternBytes);
+		buffer.position(HEADER_SIZE + 4 + align(patternBytes.length));
+		for(DFA dfa: dfas)
+			writeSection(dfa, buffer);
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), HEADER_SIZE, size - HEADER_SIZE);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, (int) crc.getValue());
+		buffer.putInt(12, size - HEADER_SIZE);
+		Files.write(Paths.get(fileName), buffer.array());
+	}
+
+	private static int align(int bytes) { // Rounds up to a multiple of 4
+		return (bytes + 3) & ~3;
+	}
+
+	private static int sectionSize(DFA dfa) {
+		int ints = 6 + 2 * dfa.getAlphabet().getIntervalCount() + 256 + 2 * ((dfa.getStateCount() + 31) / 32)
+				+ dfa.getStateCount() * dfa.getAlphabet().getClassCount();
+		return 4 * ints;
+	}
+
+	private static void writeSection(DFA dfa, ByteBuffer buffer) {
+		Alphabet alphabet = dfa.getAlphabet();
+		int states = dfa.getStateCount(), columns = alphabet.getClassCount();
+		buffer.putInt(states);
+		buffer.putInt(dfa.getStartState());
+		buffer.putInt(dfa.getDeadState());
+		buffer.putInt(dfa.acceptsEmpty() ? 1 : 0);
+		buffer.putInt(columns);
+		buffer.putInt(alphabet.getIntervalCount());
+		for(int i=0; i<alphabet.getIntervalCount(); i++)
+			buffer.putInt(alphabet.getIntervalStart(i));
+		for(int i=0; i<alphabet.getIntervalCount(); i++)
+			buffer.putInt(alphabet.getIntervalClass(i));
+		for(char c=0; c<256; c++)
+			buffer.putInt(alphabet.classOf(c));
+		for(int word=0; word<(states+31)/32; word++) {
+			int bits = 0;
+			for(int s=32*word; s<Math.min(states, 32*word+32); s++)
+				if(dfa.isAccepting(s)) bits |= 1 << s;
+			buffer.putInt(bits);
+		}
+		for(int word=0; word<(states+31)/32; word++) {
+			int bits = 0;
+			for(int s=32*word; s<Math.min(states, 32*word+32); s++)
+				if(dfa.isAcceptingAtEnd(s)) bits |= 1 << s;
+			buffer.putInt(bits);
+		}
+		for(int s=0; s<states; s++)
+			for(int c=0; c<columns; c++)
+				buffer.putInt(dfa.next(s, c));
+	}
+
+	public static PatternArtifact load(String fileName) throws IOException {
+		/* Memory-maps an artifact written by save. Throws a RuntimeException if the file is not an
+		 * artifact, was written by another version, or is damaged. The mapping stays valid after
+		 * the file is closed. */
+		MappedByteBuffer mapped;
+		try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) throw new RuntimeException(fileName + " is not a pattern artifact");
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+		if(buffer.getInt(0) != MAGIC) throw new RuntimeException(fileName + " is not a pattern artifact");
+		if(buffer.getInt(4) != VERSION) throw new RuntimeException(fileName + " has version " + buffer.getInt(4) + ", expected " + VERSION);
+		if(buffer.getInt(12) != buffer.capacity() - HEADER_SIZE) throw new RuntimeException(fileName + " is damaged (wrong length)");
+		CRC32 crc = new CRC32();
+		ByteBuffer payload = buffer.duplicate();
+		payload.position(HEADER_SIZE);
+		crc.update(payload);
+		if((int) crc.getValue() != buffer.getInt(8)) throw new RuntimeException(fileName + " is damaged (wrong checksum)");
+
+		int patternLength = buffer.getInt(HEADER_SIZE);
+		if(patternLength < 0 || patternLength > buffer.capacity() - HEADER_SIZE - 4) throw new RuntimeException(fileName + " is damaged (wrong pattern length)");
+		byte[] patternBytes = new byte[patternLength];
+		ByteBuffer view = buffer.duplicate();
+		view.position(HEADER_SIZE + 4);
+		view.get(patternBytes);
+
+		int offset = HEADER_SIZE + 4 + align(patternLength);
+		MappedDFA[] dfas = new MappedDFA[3];
+		for(int i=0; i<dfas.length; i++) {
+			dfas[i] = new MappedDFA(buffer, offset);
+			offset = dfas[i].end;
+		}
+		if(offset != buffer.capacity()) throw new RuntimeException(fileName + " is damaged (wrong length)");
+		return new PatternArtifact(new String(patternBytes, StandardCharsets.UTF_8), dfas[0], dfas[1], dfas[2]);
+	}
+
+	public String getPattern() { // The regular expression the artifact was compiled from
+		return pattern;
+	}
+
+	/* Matching is the same as with the NFA of the pattern. Any number of threads can match at once. */
+
+	public boolean accepts(CharSequence s) {
+		return wholeStringDFA.accepts(s);
+	}
+
+	public boolean acceptsLine(CharSequence line) {
+		return lineDFA.acceptsLine(line);
+	}
+
+	public boolean acceptsLine(ByteBuffer bytes, int from, int to) {
+		// Same as acceptsLine(CharSequence), for a line of UTF-8 bytes from..to-1 of 'bytes'
+		return utf8LineDFA.acceptsLine(bytes, from, to);
+	}
+
+	// Takes the file as input and prints every line that the pattern accepts, like NFA.acceptedLines
+	public void acceptedLines(String fileName) {
+		NFA.printAcceptedLines(fileName, line -> acceptsLine(line) ? "" : null);
+	}
+
+	public String toString() {
+		return "PatternArtifact [" + pattern + ", states=" + wholeStringDFA.stateCount + "/" + lineDFA.stateCount + "/" + utf8LineDFA.stateCount + "]";
+	}
+
+	private static class MappedDFA {
+
+		/* A DFA read straight from the mapped file, in the same way as DFA but with every array
+		 * replaced by the offset of the array in 'buffer' */
+
+		final ByteBuffer buffer;
+		final int stateCount;
+		final int startState;
+		final int deadState;
+		final boolean acceptsEmpty;
+		final int columns;
+		final int intervalCount;
+		final int starts; // Offsets of the arrays
+		final int intervalClass;
+		final int latin1Class;
+		final int acceptBits;
+		final int endAcceptBits;
+		final int table;
+		final int end; // Offset just after the DFA
+
+		MappedDFA(ByteBuffer buffer, int offset) {
+			/* Checks every count and every entry of the tables, so that a damaged file whose
+			 * checksum still matches, or a file written to look like an artifact, is rejected
+			 * here instead of failing while matching */
+			this.buffer = buffer;
+			check(offset + 24 <= buffer.capacity());
+			stateCount = buffer.getInt(offset);
+			startState = buffer.getInt(offset + 4);
+			deadState = buffer.getInt(offset + 8);
+			acceptsEmpty = buffer.getInt(offset + 12) != 0;
+			columns = buffer.getInt(offset + 16);
+			intervalCount = buffer.getInt(offset + 20);
+			starts = offset + 24;
+			intervalClass = starts + 4 * intervalCount;
+			latin1Class = intervalClass + 4 * intervalCount;
+			acceptBits = latin1Class + 4 * 256;
+			endAcceptBits = acceptBits + 4 * ((stateCount + 31) / 32);
+			table = endAcceptBits + 4 * ((stateCount + 31) / 32);
+			check(stateCount > 0 && columns > 0 && intervalCount > 0 && startState >= 0 && startState < stateCount
+					&& deadState >= -1 && deadState < stateCount && (buffer.getInt(offset + 12) & ~1) == 0);
+			long size = 24 + 8L * intervalCount + 4 * 256 + 8L * ((stateCount + 31) / 32) + 4L * stateCount * columns;
+			check(offset + size <= buffer.capacity());
+			end = table + 4 * stateCount * columns;
+
+			check(buffer.getInt(starts) == 0);
+			for(int i=1; i<intervalCount; i++)
+				check(buffer.getInt(starts + 4 * i) > buffer.getInt(starts + 4 * (i - 1)));
+			for(int i=0; i<intervalCount; i++)
+				checkEntry(intervalClass + 4 * i, columns);
+			for(int c=0; c<256; c++)
+				checkEntry(latin1Class + 4 * c, columns);
+			for(int i=0; i<stateCount * columns; i++)
+				checkEntry(table + 4 * i, stateCount);
+		}
+
+		private static void check(boolean valid) {
+			if(!valid) throw new RuntimeException("Pattern artifact is damaged");
+		}
+
+		private void checkEntry(int offset, int limit) { // The int at 'offset' must be at least 0 and less than 'limit'
+			int entry = buffer.getInt(offset);
+			check(entry >= 0 && entry < limit);
+		}
+
+		private int classOf(char c) {
+			if(c < 256) return buffer.getInt(latin1Class + 4 * c);
+			int low = 0, high = intervalCount - 1; // Find the last interval starting at or before c
+			while(low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if(buffer.getInt(starts + 4 * middle) <= c) low = middle;
+				else high = middle - 1;
+			}
+			return buffer.getInt(intervalClass + 4 * low);
+		}
+
+		private boolean isAccepting(int state) {
+			return (buffer.getInt(acceptBits + 4 * (state >> 5)) & (1 << state)) != 0;
+		}
+
+		private boolean isAcceptingAtEnd(int state) {
+			return (buffer.getInt(endAcceptBits + 4 * (state >> 5)) & (1 << state)) != 0;
+		}
+
+		private int next(int state, int cls) {
+			return buffer.getInt(table + 4 * (state * columns + cls));
+		}
+
+		boolean accepts(CharSequence s) {
+			if(s.length() == 0) return acceptsEmpty;
+			int state = startState;
+			for(int i=0; i<s.length(); i++) {
+				state = next(state, classOf(s.charAt(i)));
+				if(state == deadState) return false;
+			}
+			return isAcceptingAtEnd(state);
+		}
+
+		boolean acceptsLine(CharSequence line) {
+			if(line.length() == 0) return acceptsEmpty;
+			int state = startState;
+			if(isAccepting(state)) return true;
+			for(int i=0; i<line.length(); i++) {
+				state = next(state, classOf(line.charAt(i)));
+				if(isAccepting(state)) return true;
+				if(state == deadState) return false;
+			}
+			return isAcceptingAtEnd(state);
+		}
+
+		boolean acceptsLine(ByteBuffer bytes, int from, int to) {
+			if(from == to) return acceptsEmpty;
+			int state = startState;
+			if(isAccepting(state)) return true;
+			for(int i=from; i<to; i++) {
+				state = next(state, buffer.getInt(latin1Class + 4 * (bytes.get(i) & 0xFF)));
+				if(isAccepting(state)) return true;
+				if(state == deadState) return false;
+			}
+			return isAcceptingAtEnd(state);
+		}
+	}
+
+	public static void test() throws IOException { // Method to test the PatternArtifact class
+		/* A saved and loaded artifact must match like the NFA of its pattern, and a file that
+		 * was cut short or changed must be rejected when it is loaded */
+		String[] patterns = {"(a|b)*abb", "^ab|c$", "[^a]x?", "\u00E9+\u4E2D", "^$", "a{2,3}", "\\w+\\d"};
+		String alphabet = "abcx1_\u00E9\u4E2D";
+		Random random = new Random(18);
+		File file = File.createTempFile("PatternArtifact", ".rxa");
+		try {
+			for(String pattern: patterns) {
+				save(pattern, file.getPath(), DFA.DEFAULT_STATE_LIMIT);
+				PatternArtifact artifact = load(file.getPath());
+				if(!artifact.getPattern().equals(pattern)) throw new RuntimeException("The artifact of " + pattern + " was loaded as " + artifact.getPattern());
+				NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression());
+				for(int t=0; t<2000; t++) {
+					StringBuilder builder = new StringBuilder();
+					int length = random.nextInt(7);
+					for(int i=0; i<length; i++)
+						builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+					String s = builder.toString();
+					byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+					if(artifact.accepts(s) != nfa.accepts(s) || artifact.acceptsLine(s) != nfa.acceptsLine(s)
+							|| artifact.acceptsLine(ByteBuffer.wrap(bytes), 0, bytes.length) != nfa.acceptsLine(s))
+						throw new RuntimeException("The loaded artifact of " + pattern + " and its NFA differ on " + s);
+				}
+			}
+
+			/* Damage the artifact of the last pattern in every way load checks for */
+			byte[] saved = Files.readAllBytes(file.toPath());
+			byte[] truncated = Arrays.copyOf(saved, saved.length - 4);
+			byte[] extended = Arrays.copyOf(saved, saved.length + 4);
+			byte[] flipped = saved.clone();
+			flipped[saved.length / 2] ^= 1;
+			byte[] badEntry = saved.clone(); // The last entry of the last table names a state that does not exist, under a valid checksum
+			ByteBuffer buffer = ByteBuffer.wrap(badEntry).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(badEntry.length - 4, Integer.MAX_VALUE);
+			CRC32 crc = new CRC32();
+			crc.update(badEntry, HEADER_SIZE, badEntry.length - HEADER_SIZE);
+			buffer.putInt(8, (int) crc.getValue());
+			byte[] notArtifact = saved.clone();
+			notArtifact[0] ^= 1;
+
+			byte[][] damaged = {truncated, extended, flipped, badEntry, notArtifact};
+			String[] names = {"cut short", "made longer", "changed", "changed under a valid checksum", "given another magic number"};
+			for(int i=0; i<damaged.length; i++) {
+				Files.write(file.toPath(), damaged[i]);
+				boolean rejected = false;
+				try {
+					load(file.getPath());
+				} catch (RuntimeException e) {
+					rejected = true;
+				}
+				if(!rejected) throw new RuntimeException("An artifact that was " + names[i] + " was loaded");
+			}
+		} finally {
+			file.delete();
+		}
+		System.out.println("All tests passed!");
+	}
+
+}
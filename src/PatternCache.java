@@ -0,0 +1,153 @@
+/*
+ * PatternCache.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PatternCache {
+
+	public static final long DEFAULT_MAX_WEIGHT = 1000000; // Total number of NFA states and edges kept
+
+	private static final PatternCache shared = new PatternCache(DEFAULT_MAX_WEIGHT);
+
+	private final long maxWeight;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true); // Least recently used first
+	private long totalWeight; // Sum of the weights of the compiled entries, guarded by 'this'
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public PatternCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	public static PatternCache getShared() { // The cache used by Main and the GUI
+		return shared;
+	}
+
+	public NFA get(final String regex) {
+		/* Returns the compiled NFA for 'regex', compiling it if it is not cached. If several
+		 * threads ask for the same missing pattern at once, only the first compiles it and the
+		 * others wait for its result. Invalid patterns throw the same exception as
+		 * InfixToPostfixConverter and are not cached. The same NFA is returned to every caller,
+		 * and any number of threads can match with it at the same time. */
+		Entry entry;
+		boolean compileHere = false;
+		synchronized(this) {
+			entry = entries.get(regex);
+			if(entry == null) {
+				entry = new Entry(new Callable<NFA>() {
+					public NFA call() {
+						return compile(regex);
+					}
+				});
+				entries.put(regex, entry);
+				compileHere = true;
+			}
+		}
+
+		if(compileHere) {
+			misses.incrementAndGet();
+			entry.task.run(); // Compile outside the lock so other patterns can be looked up meanwhile
+		} else {
+			hits.incrementAndGet();
+		}
+
+		try {
+			NFA nfa = entry.task.get();
+			if(compileHere) admit(regex, entry, nfa);
+			return nfa;
+		} catch (ExecutionException e) {
+			if(compileHere) {
+				synchronized(this) {
+					entries.remove(regex);
+				}
+			}
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static NFA compile(String regex) {
+		InfixToPostfixConverter ifpf = new InfixToPostfixConverter(regex);
+		NFA nfa = NFA.getNFAfromPostfix(ifpf.getPosfixExpression());
+		nfa.compile(); // Do the expensive part now, not on the first match
+		return nfa;
+	}
+
+	private synchronized void admit(String regex, Entry entry, NFA nfa) {
+		// Counts the weight of a newly compiled entry and evicts the least recently used entries if needed
+		if(entries.get(regex) != entry) return; // Already evicted or replaced
+		entry.weight = nfa.compile().getStateCount() + nfa.compile().getEdgeCount();
+		totalWeight += entry.weight;
+
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while(totalWeight > maxWeight && iterator.hasNext()) {
+			Entry eldest = iterator.next().getValue();
+			if(eldest == entry) continue; // Always keep the pattern that was just asked for
+			if(!eldest.task.isDone()) continue; // Still being compiled by another thread
+			iterator.remove();
+			totalWeight -= eldest.weight;
+			evictions.incrementAndGet();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return totalWeight;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		totalWeight = 0;
+	}
+
+	public String toString() {
+		return "PatternCache [size=" + size() + ", weight=" + getWeight() + "/" + maxWeight + ", hits=" + getHitCount()
+				+ ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+
+	private static class Entry {
+
+		final FutureTask<NFA> task;
+		long weight; // Zero until the pattern has been compiled
+
+		Entry(Callable<NFA> compiler) {
+			task = new FutureTask<NFA>(compiler);
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * PatternSet.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+public class PatternSet {
+
+	/* Many regular expressions combined into a single automaton, the union of their NFAs, whose
+	 * accept states are tagged with the index of the pattern they belong to. Every line is read
+	 * once whatever the number of patterns, and the tags of the accepting states reached tell
+	 * which patterns matched. The automaton is shared, each thread caches the DFA states it
+	 * builds in its own LazyDFA. */
+
+	private final String[] patterns;
+	private final CompiledNFA program;
+	private final int cacheBudget;
+	private final ThreadLocal<LazyDFA> lineDFAs = new ThreadLocal<LazyDFA>() {
+		@Override
+		protected LazyDFA initialValue() {
+			return new LazyDFA(program, true, cacheBudget);
+		}
+	};
+
+	public PatternSet(String... patterns) {
+		this(Arrays.asList(patterns));
+	}
+
+	public PatternSet(List<String> patterns) {
+		this(patterns, 8 * LazyDFA.DEFAULT_MEMORY_BUDGET); // The combined automaton has many more DFA states than a single pattern
+	}
+
+	public PatternSet(List<String> patterns, int cacheBudget) {
+		/* Invalid patterns throw the same exception as InfixToPostfixConverter */
+		if(patterns.isEmpty()) throw new RuntimeException("A pattern set needs at least one pattern");
+
+		this.patterns = patterns.toArray(new String[0]);
+		this.cacheBudget = cacheBudget;
+
+		ArrayList<NFA> nfas = new ArrayList<NFA>();
+		for(String pattern: patterns) {
+			InfixToPostfixConverter ifpf = new InfixToPostfixConverter(pattern);
+			nfas.add(NFA.getNFAfromPostfix(ifpf.getPosfixExpression()));
+		}
+		program = NFA.compileTagged(nfas);
+	}
+
+	public int size() {
+		return patterns.length;
+	}
+
+	public String getPattern(int index) {
+		return patterns[index];
+	}
+
+	public BitSet matchingPatterns(CharSequence line) {
+		// Returns the indices of the patterns that match some part of 'line'
+		BitSet matched = new BitSet(patterns.length);
+		matchingPatterns(line, matched);
+		return matched;
+	}
+
+	public void matchingPatterns(CharSequence line, BitSet matched) {
+		// Same as matchingPatterns(line), but adds the indices to 'matched' so the BitSet can be reused
+		lineDFAs.get().matchingTags(line, matched);
+	}
+
+	// Takes the file as input and prints every line that any pattern accepts, with the indices of those patterns
+	public void acceptedLines(String fileName) {
+		BitSet matched = new BitSet(patterns.length);
+		NFA.printAcceptedLines(fileName, line -> {
+			matched.clear();
+			matchingPatterns(line, matched);
+			return matched.isEmpty() ? null : " " + matched;
+		});
+	}
+
+	public String toString() {
+		return "PatternSet " + Arrays.toString(patterns);
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * RegexNode.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+public class RegexNode {
+
+	public enum Kind {
+		EMPTY, // Matches the empty string
+		START, // Matches the empty string at the start of the input, the anchor '^'
+		END, // Matches the empty string at the end of the input, the anchor '$'
+		SYMBOL, // Matches a single character of its class
+		CONCAT, // Matches its children one after the other
+		UNION, // Matches any one of its children
+		STAR, // Matches its child any number of times
+		REPEAT, // Matches its child between getMin() and getMax() times, getMax() is negative if there is no upper bound
+		GROUP // Matches its child and captures the match as group getGroup()
+	}
+
+	private Kind kind;
+	private CharClass charClass;
+	private List<RegexNode> children;
+	private int min, max; // Only used by REPEAT
+	private int group; // Only used by GROUP
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public int getGroup() {
+		return group;
+	}
+
+	public CharClass getCharClass() {
+		return charClass;
+	}
+
+	public boolean isLiteral() { // A symbol that matches one character only
+		return kind == Kind.SYMBOL && charClass.getRangeCount() == 1 && charClass.getLow(0) == charClass.getHigh(0);
+	}
+
+	public char getSymbol() { // The character a literal matches
+		return charClass.getLow(0);
+	}
+
+	public List<RegexNode> getChildren() {
+		return children;
+	}
+
+	private RegexNode(Kind kind, CharClass charClass, List<RegexNode> children) {
+		this.kind = kind;
+		this.charClass = charClass;
+		this.children = children;
+	}
+
+	public static RegexNode empty() {
+		return new RegexNode(Kind.EMPTY, null, new ArrayList<RegexNode>());
+	}
+
+	public static RegexNode anchor(char anchor) { // The anchor '^' or '$'
+		return new RegexNode(anchor == '^' ? Kind.START : Kind.END, null, new ArrayList<RegexNode>());
+	}
+
+	public static RegexNode symbol(char symbol) {
+		return charClass(CharClass.of(symbol));
+	}
+
+	public static RegexNode charClass(CharClass charClass) {
+		return new RegexNode(Kind.SYMBOL, charClass, new ArrayList<RegexNode>());
+	}
+
+	public static RegexNode star(RegexNode child) {
+		List<RegexNode> children = new ArrayList<RegexNode>();
+		children.add(child);
+		return new RegexNode(Kind.STAR, null, children);
+	}
+
+	public static RegexNode repeat(RegexNode child, int min, int max) {
+		List<RegexNode> children = new ArrayList<RegexNode>();
+		children.add(child);
+		RegexNode node = new RegexNode(Kind.REPEAT, null, children);
+		node.min = min;
+		node.max = max;
+		return node;
+	}
+
+	public static RegexNode group(RegexNode child, int group) {
+		List<RegexNode> children = new ArrayList<RegexNode>();
+		children.add(child);
+		RegexNode node = new RegexNode(Kind.GROUP, null, children);
+		node.group = group;
+		return node;
+	}
+
+	public static RegexNode concatenate(RegexNode left, RegexNode right) {
+		return combine(Kind.CONCAT, left, right);
+	}
+
+	public static RegexNode union(RegexNode left, RegexNode right) {
+		return combine(Kind.UNION, left, right);
+	}
+
+	public static RegexNode concatenate(List<RegexNode> nodes) {
+		// A new node for the concatenation of 'nodes', which may be empty
+		return combine(Kind.CONCAT, nodes);
+	}
+
+	public static RegexNode union(List<RegexNode> nodes) {
+		// A new node for the union of 'nodes', there must be at least one
+		return combine(Kind.UNION, nodes);
+	}
+
+	private static RegexNode combine(Kind kind, List<RegexNode> nodes) {
+		/* Like combine(kind, left, right), but none of the nodes is changed. A single node is
+		 * returned as it is. */
+		if(nodes.isEmpty()) return empty();
+		if(nodes.size() == 1) return nodes.get(0);
+		List<RegexNode> children = new ArrayList<RegexNode>();
+		for(RegexNode node: nodes) {
+			if(node.kind == kind) children.addAll(node.children);
+			else children.add(node);
+		}
+		return new RegexNode(kind, null, children);
+	}
+
+	private static RegexNode combine(Kind kind, RegexNode left, RegexNode right) {
+		/* Concatenations and unions are associative, so nested ones are flattened into a single
+		 * node with many children. This keeps the tree shallow for long patterns. The operands
+		 * are consumed: a flattened left node gets the new children itself instead of being
+		 * copied, so a pattern like a|b|c|... is built in linear time. */
+		if(left.kind == kind) {
+			if(right.kind == kind) left.children.addAll(right.children);
+			else left.children.add(right);
+			return left;
+		}
+		List<RegexNode> children = new ArrayList<RegexNode>();
+		children.add(left);
+		if(right.kind == kind) children.addAll(right.children);
+		else children.add(right);
+		return new RegexNode(kind, null, children);
+	}
+
+	public static RegexNode fromPostfix(String postfixExpression) {
+		// Builds the tree for a postfix expression, reading it the same way as NFA.getNFAfromPostfix
+
+		Stack<RegexNode> stack = new Stack<RegexNode>();
+		RegexNode node1, node2;
+
+		for(int i=0; i<postfixExpression.length(); i++) {
+			char c = postfixExpression.charAt(i);
+
+			if(c == '&') {
+				node2 = stack.pop();
+				node1 = stack.pop();
+				stack.push(concatenate(node1, node2));
+			}
+			else if(c == '|') {
+				node2 = stack.pop();
+				node1 = stack.pop();
+				stack.push(union(node1, node2));
+			}
+			else if(c == '*') {
+				stack.push(star(stack.pop()));
+			}
+			else if(c == '+') {
+				stack.push(repeat(stack.pop(), 1, -1));
+			}
+			else if(c == '?') {
+				stack.push(repeat(stack.pop(), 0, 1));
+			}
+			else if(c == '{') {
+				int end = postfixExpression.indexOf('}', i);
+				String[] bounds = postfixExpression.substring(i + 1, end).split(",", -1);
+				int max = bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+				stack.push(repeat(stack.pop(), Integer.parseInt(bounds[0]), max));
+				i = end;
+			}
+			else if(c == '(') {
+				int end = postfixExpression.indexOf(')', i);
+				stack.push(group(stack.pop(), Integer.parseInt(postfixExpression.substring(i + 1, end))));
+				i = end;
+			}
+			else if(c == '\u03B5') {
+				stack.push(empty());
+			}
+			else if(c == '^' || c == '$') {
+				stack.push(anchor(c));
+			}
+			else if(c == '\\') {
+				stack.push(symbol(postfixExpression.charAt(++i)));
+			}
+			else if(c == '[') {
+				int end = CharClass.findEnd(postfixExpression, i);
+				stack.push(charClass(CharClass.parse(postfixExpression.substring(i, end))));
+				i = end - 1;
+			}
+			else if(c == '.') {
+				stack.push(charClass(CharClass.any()));
+			}
+			else
+				stack.push(symbol(c));
+		}
+
+		return stack.peek();
+	}
+
+	public boolean equals(Object other) {
+		/* Nodes are equal if they have the same structure, so they match the same strings */
+		if(!(other instanceof RegexNode)) return false;
+		RegexNode node = (RegexNode) other;
+		return kind == node.kind && min == node.min && max == node.max && group == node.group
+				&& (charClass == null ? node.charClass == null : charClass.equals(node.charClass)) && children.equals(node.children);
+	}
+
+	public int hashCode() {
+		return 31 * (31 * (31 * kind.hashCode() + (charClass == null ? 0 : charClass.hashCode())) + 17 * min + max + 257 * group) + children.hashCode();
+	}
+
+	public String toString() {
+		switch(kind) {
+		case EMPTY:
+			return "\u03B5";
+		case START:
+			return "^";
+		case END:
+			return "$";
+		case SYMBOL:
+			return isLiteral() ? "" + getSymbol() : charClass.toString();
+		case STAR:
+			return "(" + children.get(0) + ")*";
+		case REPEAT:
+			return "(" + children.get(0) + "){" + min + "," + (max < 0 ? "" : "" + max) + "}";
+		case GROUP:
+			return "(" + group + ":" + children.get(0) + ")";
+		default:
+			StringBuilder sb = new StringBuilder("(");
+			for(int i=0; i<children.size(); i++) {
+				if(i > 0 && kind == Kind.UNION) sb.append('|');
+				sb.append(children.get(i));
+			}
+			return sb.append(')').toString();
+		}
+	}
+
+}
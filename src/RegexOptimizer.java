@@ -0,0 +1,193 @@
+/*
+ * RegexOptimizer.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RegexOptimizer {
+
+	/* Rewrites the tree of a pattern into a smaller tree that matches the same strings, before
+	 * the NFA is built from it. Every state the tree saves is a state less to follow for every
+	 * character, and fewer NFA states make smaller DFA states too. The rewrites are:
+	 *
+	 *  - Nested repetitions collapse: (x*)*, (x+)* and (x?)* are x*, (x*){m,n} is x* and
+	 *    (x*|y)* is (x|y)*.
+	 *  - Empty strings are dropped from concatenations and x{1,1} is x.
+	 *  - Capturing groups are dropped, they do not change which strings match. CaptureProgram
+	 *    is built from the tree before it is optimized.
+	 *  - A union keeps only the first of equal branches, so (x|x) is x.
+	 *  - Branches of a union that start with the same subexpression share it: foo|fob|fox is
+	 *    fo(o|b|x). This is repeated on what follows, so a union of words becomes a trie.
+	 *
+	 * Nodes are compared by structure with RegexNode.equals. The tree given is not changed. */
+
+	public static RegexNode optimize(RegexNode node) {
+		List<RegexNode> children = new ArrayList<RegexNode>();
+		switch(node.getKind()) {
+		case STAR:
+			return star(optimize(node.getChildren().get(0)));
+		case REPEAT:
+			return repeat(optimize(node.getChildren().get(0)), node.getMin(), node.getMax());
+		case GROUP:
+			return optimize(node.getChildren().get(0));
+		case CONCAT:
+			for(RegexNode child: node.getChildren()) {
+				RegexNode optimized = optimize(child);
+				if(optimized.getKind() == RegexNode.Kind.EMPTY) continue; // Matches nothing to concatenate
+				if(optimized.getKind() == RegexNode.Kind.STAR && !children.isEmpty() && optimized.equals(children.get(children.size() - 1)))
+					continue; // x*x* is x*
+				children.add(optimized);
+			}
+			return RegexNode.concatenate(children);
+		case UNION:
+			for(RegexNode child: node.getChildren())
+				children.add(optimize(child));
+			return union(children);
+		default:
+			return node;
+		}
+	}
+
+	private static RegexNode star(RegexNode child) {
+		child = unwrapRepetition(child);
+		if(child.getKind() == RegexNode.Kind.UNION) { // (x*|y)* is (x|y)*, and (|y)* is y*
+			List<RegexNode> branches = new ArrayList<RegexNode>();
+			for(RegexNode branch: child.getChildren()) {
+				branch = unwrapRepetition(branch);
+				if(branch.getKind() != RegexNode.Kind.EMPTY) branches.add(branch);
+			}
+			child = branches.isEmpty() ? RegexNode.empty() : union(branches);
+		}
+		if(child.getKind() == RegexNode.Kind.EMPTY) return child;
+		return RegexNode.star(child);
+	}
+
+	private static RegexNode unwrapRepetition(RegexNode node) {
+		/* Under a star, x*, x+ and x? can be replaced by x, since the star repeats x any
+		 * number of times anyway */
+		while(node.getKind() == RegexNode.Kind.STAR
+				|| (node.getKind() == RegexNode.Kind.REPEAT && node.getMin() <= 1 && node.getMax() != 0))
+			node = node.getChildren().get(0);
+		return node;
+	}
+
+	private static RegexNode repeat(RegexNode child, int min, int max) {
+		if(max == 0 || child.getKind() == RegexNode.Kind.EMPTY) return RegexNode.empty();
+		if(child.getKind() == RegexNode.Kind.STAR) return child; // Repeating x* gives x* again
+		if(min == 1 && max == 1) return child;
+		if(min == 0 && max < 0) return star(child);
+		return RegexNode.repeat(child, min, max);
+	}
+
+	private static RegexNode union(List<RegexNode> branches) {
+		/* Removes the branches equal to an earlier one and factors out the first node that
+		 * branches have in common. The branches must have been optimized already. */
+		LinkedHashSet<RegexNode> distinct = new LinkedHashSet<RegexNode>();
+		for(RegexNode branch: branches) {
+			if(branch.getKind() == RegexNode.Kind.UNION) distinct.addAll(branch.getChildren());
+			else distinct.add(branch);
+		}
+
+		/* Group the branches by their first node, in the order each first node appears. The rest
+		 * of the branch is kept for each, the empty string if it was the first node alone. */
+		LinkedHashMap<RegexNode, List<RegexNode>> groups = new LinkedHashMap<RegexNode, List<RegexNode>>();
+		boolean shared = false;
+		for(RegexNode branch: distinct) {
+			RegexNode head = branch, tail = RegexNode.empty();
+			if(branch.getKind() == RegexNode.Kind.CONCAT) {
+				List<RegexNode> parts = branch.getChildren();
+				head = parts.get(0);
+				tail = RegexNode.concatenate(parts.subList(1, parts.size()));
+			}
+			List<RegexNode> tails = groups.get(head);
+			if(tails == null) {
+				tails = new ArrayList<RegexNode>();
+				groups.put(head, tails);
+			} else {
+				shared = true;
+			}
+			tails.add(tail);
+		}
+		if(!shared) return RegexNode.union(new ArrayList<RegexNode>(distinct));
+
+		List<RegexNode> factored = new ArrayList<RegexNode>();
+		for(Map.Entry<RegexNode, List<RegexNode>> group: groups.entrySet()) {
+			List<RegexNode> tails = group.getValue();
+			List<RegexNode> parts = new ArrayList<RegexNode>();
+			parts.add(group.getKey());
+			RegexNode rest = (tails.size() == 1) ? tails.get(0) : union(tails); // Factor the rest the same way
+			if(rest.getKind() != RegexNode.Kind.EMPTY) parts.add(rest);
+			factored.add(RegexNode.concatenate(parts));
+		}
+		return RegexNode.union(factored);
+	}
+
+	public static void test() { // Method to test the RegexOptimizer class
+		System.out.println("Testing...");
+
+		/* The optimized tree must match the same strings as the tree it was made from */
+		String[] patterns = {"(a*)*b", "(a|a)b", "ab|ac|a", "(a+)*|(b?)*c", "((a|b)*|c)*", "(ab*)*(ab*)*", "(a*){2,3}", "(ab|ab|a)c{1}",
+				"^ab|^ac|b$", "(a|\u03B5)*", "a{0}b", "(ab|ac)(ab|ac)*"};
+		Random random = new Random(1);
+		for(String pattern: patterns) {
+			RegexNode tree = RegexNode.fromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression());
+			NFA optimized = build(optimize(tree));
+			NFA plain = build(tree);
+			if(optimized.compile().getStateCount() > plain.compile().getStateCount())
+				throw new RuntimeException(pattern + " got larger: " + optimize(tree));
+			for(int i=0; i<2000; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(8);
+				for(int k=0; k<length; k++)
+					sb.append("abc".charAt(random.nextInt(3)));
+				String s = sb.toString();
+				if(optimized.accepts(s) != plain.accepts(s) || optimized.acceptsLine(s) != plain.acceptsLine(s))
+					throw new RuntimeException(pattern + " optimized to " + optimize(tree) + " differs for " + s);
+			}
+		}
+		System.out.println("Optimized patterns match the same strings");
+
+		expect("(a*)*", "(a)*");
+		expect("(x|x)", "x");
+		expect("foo|fob|fox", "(fo(o|b|x))");
+
+		/* A union of 5000 words sharing their prefixes becomes a trie */
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<5000; i++) {
+			if(i > 0) sb.append('|');
+			sb.append("foo").append(Integer.toString(i, 36));
+		}
+		RegexNode words = RegexNode.fromPostfix(new InfixToPostfixConverter(sb.toString()).getPosfixExpression());
+		int plainStates = build(words).compile().getStateCount();
+		int optimizedStates = build(optimize(words)).compile().getStateCount();
+		System.out.println("5000 words: " + plainStates + " states, " + optimizedStates + " optimized");
+		if(2 * optimizedStates > plainStates) throw new RuntimeException("The union of words was not factored");
+
+		System.out.println("All tests passed!");
+	}
+
+	private static NFA build(RegexNode tree) {
+		NFABuilder builder = new NFABuilder();
+		builder.add(tree);
+		return builder.build();
+	}
+
+	private static void expect(String pattern, String expected) {
+		RegexNode tree = optimize(RegexNode.fromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression()));
+		if(!tree.toString().equals(expected)) throw new RuntimeException(pattern + " optimized to " + tree + ", expected " + expected);
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * StateKey.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.util.Arrays;
+
+public class StateKey { // A sorted set of NFA state numbers, usable as a hash map key
+
+	private final int[] set;
+	private final int hash;
+
+	public StateKey(StateSet states) {
+		set = new int[states.size()];
+		for(int i=0; i<set.length; i++)
+			set[i] = states.get(i);
+		Arrays.sort(set);
+		hash = Arrays.hashCode(set);
+	}
+
+	public int[] getStates() {
+		return set;
+	}
+
+	public int hashCode() {
+		return hash;
+	}
+
+	public boolean equals(Object o) {
+		return o instanceof StateKey && Arrays.equals(set, ((StateKey) o).set);
+	}
+
+}
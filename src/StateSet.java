@@ -0,0 +1,65 @@
+/*
+ * StateSet.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+public class StateSet {
+
+	/* Sparse set of state numbers in the range 0..capacity-1. 'dense' holds the members in
+	 * insertion order and 'sparse' maps a state to its slot in 'dense', so add, contains and
+	 * clear are all constant time and iterating only visits the members. */
+	private int[] dense;
+	private int[] sparse;
+	private int size;
+
+	public StateSet(int capacity) {
+		dense = new int[capacity];
+		sparse = new int[capacity];
+	}
+
+	public boolean contains(int state) {
+		int slot = sparse[state];
+		return slot < size && dense[slot] == state;
+	}
+
+	public boolean add(int state) { // Returns false if the state was already a member
+		if(contains(state)) return false;
+		dense[size] = state;
+		sparse[state] = size;
+		size++;
+		return true;
+	}
+
+	public int get(int index) { // Returns the member at position 'index' (in insertion order)
+		return dense[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for(int i=0; i<size; i++) {
+			if(i > 0) sb.append(", ");
+			sb.append(dense[i]);
+		}
+		return sb.append(']').toString();
+	}
+
+}
@@ -0,0 +1,230 @@
+/*
+ * StreamMatcher.java
+ *
+ * Formal Languages and Automata Theory - Spring 2018
+ * Regular Expression Engine
+ *
+ * Metin Suloglu
+ * Dario Pejic
+ * Liana Nassanova
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class StreamMatcher {
+
+	/* Matches the lines of a stream that arrives in chunks, like a log that is being tailed.
+	 * Chunks are pushed with feed and may end anywhere, even in the middle of a line or between
+	 * the '\r' and '\n' of a line break. Only the state of the DFA is kept between chunks, never
+	 * the text, so lines of any length are matched in constant memory. Lines end at "\n", "\r\n"
+	 * or "\r" like the lines returned by Scanner, and a line is accepted like acceptsLine would
+	 * accept it. When it is, the listener is told as soon as the first match in it ends, and the
+	 * rest of the line is skipped, like the rest of a line in which an anchored pattern can no
+	 * longer match. A match that needs the '$' anchor ends with the line. A StreamMatcher must
+	 * only be used by one thread at a time. */
+
+	public interface Listener {
+		/* Called when line 'lineNumber' (counted from 0) is accepted. Offsets are counted in
+		 * characters, or in bytes for a UTF-8 stream, from the start of the stream: the line
+		 * starts at 'lineStart' and its first match ends at 'matchEnd'. */
+		void lineMatched(long lineNumber, long lineStart, long matchEnd);
+	}
+
+	private final boolean utf8; // Whether the stream is made of UTF-8 bytes or of characters
+	private final Listener listener;
+	private final Alphabet alphabet;
+	private final DFA dfa; // The minimal DFA if NFA.compileDFA built one,
+	private final LazyDFA lazyDFA; // otherwise a lazily built one
+
+	private long position; // Characters or bytes read so far
+	private long lineNumber; // Lines ended so far
+	private long lineStart;
+	private boolean inLine; // False until the first character of a line is read
+	private boolean matched; // The current line has been accepted already
+	private boolean failed; // The DFA is in its dead state, nothing in the rest of the line can be accepted
+	private boolean afterCR; // The last character was a '\r', so a '\n' right after it is part of the same line break
+	private int state;
+
+	StreamMatcher(NFA nfa, boolean utf8, int cacheBudget, Listener listener) {
+		this.utf8 = utf8;
+		this.listener = listener;
+		dfa = utf8 ? nfa.getMinimalUTF8LineDFA() : nfa.getMinimalLineDFA();
+		lazyDFA = (dfa != null) ? null : new LazyDFA(utf8 ? nfa.compileUTF8() : nfa.compile(), true, cacheBudget);
+		alphabet = (dfa != null) ? dfa.getAlphabet() : lazyDFA.getAlphabet();
+	}
+
+	public void feed(CharSequence chars) {
+		// Reads 'chars', the next part of a stream of characters
+		if(utf8) throw new RuntimeException("A UTF-8 stream must be fed bytes");
+		for(int i=0; i<chars.length(); i++) {
+			char c = chars.charAt(i);
+			read(c, alphabet.classOf(c));
+		}
+	}
+
+	public void feed(char[] chars, int offset, int length) {
+		// Reads chars[offset..offset+length-1], the next part of a stream of characters
+		if(utf8) throw new RuntimeException("A UTF-8 stream must be fed bytes");
+		for(int i=offset; i<offset+length; i++) {
+			char c = chars[i];
+			read(c, alphabet.classOf(c));
+		}
+	}
+
+	public void feed(ByteBuffer bytes) {
+		// Reads the remaining bytes of 'bytes', the next part of a UTF-8 stream
+		if(!utf8) throw new RuntimeException("A character stream must be fed characters");
+		while(bytes.hasRemaining()) {
+			byte b = bytes.get();
+			read(b & 0xFF, alphabet.classOfByte(b));
+		}
+	}
+
+	public void finish() {
+		// Ends the stream, a last line without a line break is matched like any other
+		if(inLine) endLine();
+		afterCR = false;
+	}
+
+	public long getLineCount() { // Number of lines ended so far
+		return lineNumber;
+	}
+
+	public long getPosition() { // Characters or bytes read so far
+		return position;
+	}
+
+	private void read(int c, int cls) {
+		if(afterCR) {
+			afterCR = false;
+			if(c == '\n') { // The rest of a "\r\n" line break
+				position++;
+				return;
+			}
+		}
+
+		if(c == '\n' || c == '\r') {
+			if(!inLine) beginLine(); // An empty line
+			endLine();
+			position++;
+			afterCR = (c == '\r');
+			return;
+		}
+
+		if(!inLine) beginLine();
+		position++;
+		if(matched || failed) return; // Nothing more to find in this line
+
+		state = (dfa != null) ? dfa.next(state, cls) : lazyDFA.next(state, cls);
+		if((dfa != null) ? dfa.isAccepting(state) : lazyDFA.isAccepting(state)) match();
+		else failed = (dfa != null) ? state == dfa.getDeadState() : lazyDFA.isDead(state);
+	}
+
+	private void beginLine() {
+		inLine = true;
+		matched = false;
+		failed = false;
+		lineStart = position;
+		state = (dfa != null) ? dfa.getStartState() : lazyDFA.start();
+		if((dfa != null) ? dfa.isAccepting(state) : lazyDFA.isAccepting(state)) match(); // The empty string matches
+	}
+
+	private void endLine() {
+		/* A match may need the end of the line, and the empty line both anchors at once */
+		if(!matched && !failed) {
+			if(position == lineStart ? ((dfa != null) ? dfa.acceptsEmpty() : lazyDFA.acceptsEmpty())
+					: ((dfa != null) ? dfa.isAcceptingAtEnd(state) : lazyDFA.isAcceptingAtEnd(state))) match();
+		}
+		inLine = false;
+		lineNumber++;
+	}
+
+	private void match() {
+		matched = true;
+		listener.lineMatched(lineNumber, lineStart, position);
+	}
+
+	public static void test() throws IOException { // Method to test the StreamMatcher class
+		/* Every way of cutting the text into two chunks, and into chunks of every size, must
+		 * report the lines acceptedLines prints for the same text in a file. The cuts include
+		 * those between the '\r' and the '\n' of a line break, and in UTF-8 those in the middle
+		 * of a character. acceptedLines reads the file in the default charset, so this needs it
+		 * to be UTF-8, see MappedLineSearch.test. */
+		if(!Charset.defaultCharset().equals(StandardCharsets.UTF_8)) {
+			System.out.println("Skipped, the default charset is " + Charset.defaultCharset() + " and not UTF-8");
+			return;
+		}
+		String text = "abc\r\nxaby\r\rb\n\nab\u00E9\r\n\u4E2Dc\rcab\nend";
+		String[] patterns = {"ab", "^ab", "b$", "^$", "c|\u4E2D", "a*", "\u00E9$", "^x.*y$", "z"};
+
+		File file = File.createTempFile("StreamMatcher", ".txt");
+		try {
+			Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+			String fileName = file.getPath().substring(0, file.getPath().length() - ".txt".length());
+			for(String pattern: patterns) {
+				NFA nfa = NFA.getNFAfromPostfix(new InfixToPostfixConverter(pattern).getPosfixExpression());
+				ByteArrayOutputStream printed = new ByteArrayOutputStream();
+				PrintStream out = System.out;
+				try {
+					System.setOut(new PrintStream(printed, true, "UTF-8"));
+					nfa.acceptedLines(fileName);
+				} finally {
+					System.setOut(out);
+				}
+				String expected = printed.toString("UTF-8");
+
+				for(boolean utf8: new boolean[] {false, true}) {
+					int length = utf8 ? text.getBytes(StandardCharsets.UTF_8).length : text.length();
+					for(int cut=0; cut<=length; cut++) { // Two chunks, split at 'cut'
+						String reported = report(nfa, utf8, text, new int[] {cut, length});
+						if(!reported.equals(expected))
+							throw new RuntimeException("The stream of " + pattern + " cut at " + cut + (utf8 ? " in UTF-8" : "") + " reported\n" + reported + "but acceptedLines printed\n" + expected);
+					}
+					for(int size=1; size<=length; size++) { // Chunks of 'size'
+						int[] ends = new int[(length + size - 1) / size];
+						for(int i=0; i<ends.length; i++)
+							ends[i] = Math.min(length, (i + 1) * size);
+						String reported = report(nfa, utf8, text, ends);
+						if(!reported.equals(expected))
+							throw new RuntimeException("The stream of " + pattern + " in chunks of " + size + (utf8 ? " in UTF-8" : "") + " reported\n" + reported + "but acceptedLines printed\n" + expected);
+					}
+				}
+			}
+		} finally {
+			file.delete();
+		}
+		System.out.println("All tests passed!");
+	}
+
+	private static String report(NFA nfa, boolean utf8, String text, int[] ends) {
+		/* Feeds 'text' in the chunks ending at 'ends', as characters or as UTF-8 bytes, and
+		 * returns the accepted lines like acceptedLines prints them. The ends are counted in
+		 * bytes for UTF-8, so a chunk may end in the middle of a character. */
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		StringBuilder reported = new StringBuilder();
+		Listener listener = (lineNumber, lineStart, matchEnd) -> {
+			String rest = utf8 ? new String(bytes, (int) lineStart, bytes.length - (int) lineStart, StandardCharsets.UTF_8) : text.substring((int) lineStart);
+			String line = rest.split("[\r\n]", -1)[0];
+			reported.append("ACCEPTED LINE (" + lineNumber + ") : " + line + System.lineSeparator());
+		};
+		StreamMatcher stream = utf8 ? nfa.utf8StreamMatcher(listener) : nfa.streamMatcher(listener);
+		int start = 0;
+		for(int end: ends) {
+			if(utf8) stream.feed(ByteBuffer.wrap(bytes, start, end - start));
+			else stream.feed(text.substring(start, end));
+			start = end;
+		}
+		stream.finish();
+		if(reported.length() == 0) reported.append("No matches found." + System.lineSeparator());
+		return reported.toString();
+	}
+
+}